@@ -0,0 +1,101 @@
+package me.itzg.utils.benchmarks;
+
+import me.itzg.utils.AppendableCharSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building and accessing an {@link AppendableCharSequence} made of many fragments. Run with
+ * <code>-prof gc</code> to also see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppendableCharSequenceBenchmark {
+    @Param({"10", "1000", "50000"})
+    public int fragments;
+
+    @Param({"8", "128"})
+    public int maxFragmentLength;
+
+    private String[] content;
+    private AppendableCharSequence sequence;
+    private int[] randomIndexes;
+    private int[] randomStarts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(fragments);
+        content = new String[fragments];
+        sequence = new AppendableCharSequence();
+        for (int i = 0; i < fragments; ++i) {
+            content[i] = SyntheticContent.randomFragment(random, maxFragmentLength);
+            sequence.append(content[i]);
+        }
+
+        randomIndexes = new int[1024];
+        randomStarts = new int[1024];
+        for (int i = 0; i < randomIndexes.length; ++i) {
+            randomIndexes[i] = random.nextInt(sequence.length());
+            randomStarts[i] = random.nextInt(sequence.length() / 2 + 1);
+        }
+    }
+
+    @Benchmark
+    public AppendableCharSequence append() {
+        final AppendableCharSequence result = new AppendableCharSequence();
+        for (String fragment : content) {
+            result.append(fragment);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int charAtSequential() {
+        int sum = 0;
+        final int length = sequence.length();
+        for (int i = 0; i < length; ++i) {
+            sum += sequence.charAt(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int charAtRandom() {
+        int sum = 0;
+        for (int index : randomIndexes) {
+            sum += sequence.charAt(index);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void subSequenceRandom(Blackhole blackhole) {
+        final int length = sequence.length();
+        for (int start : randomStarts) {
+            blackhole.consume(sequence.subSequence(start, Math.min(length - 1, start + 100)));
+        }
+    }
+
+    @Benchmark
+    public String toStringWhole() {
+        return sequence.toString();
+    }
+}
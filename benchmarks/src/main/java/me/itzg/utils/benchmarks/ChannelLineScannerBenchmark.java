@@ -0,0 +1,126 @@
+package me.itzg.utils.benchmarks;
+
+import me.itzg.utils.io.ChannelLineScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of scanning a synthetic file. Run with <code>-prof gc</code> to also see the
+ * allocation rate per scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelLineScannerBenchmark {
+    private static final long FILE_SIZE = 16 * 1024 * 1024;
+
+    @Param({"1024", "8192", "65536"})
+    public int bufferSize;
+
+    @Param({"short", "mixed", "long"})
+    public String lineLengths;
+
+    @Param({"ISO-8859-1", "UTF-8"})
+    public String charset;
+
+    // named rather than given as control chars, so they can be passed with -p and read in the results
+    @Param({"LF", "CRLF"})
+    public String delimiter;
+
+    private Path file;
+    private ChannelLineScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final String delimiterChars;
+        switch (delimiter) {
+            case "LF":
+                delimiterChars = "\n";
+                break;
+            case "CRLF":
+                delimiterChars = "\r\n";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown delimiter " + delimiter + ", expected LF or CRLF");
+        }
+        file = SyntheticContent.createFile(FILE_SIZE, lineLengths, Charset.forName(charset), delimiterChars);
+
+        scanner = new ChannelLineScanner();
+        scanner.setBufferSize(bufferSize);
+        scanner.setCharset(Charset.forName(charset));
+        scanner.setDelimiter(delimiterChars);
+        scanner.initDefaultBufferPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) throws IOException {
+        scanner.setLazyDecoding(false);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scanner.scan(channel, new ConsumingObserver(blackhole));
+        }
+    }
+
+    @Benchmark
+    public void scanLazyDecoding(Blackhole blackhole) throws IOException {
+        scanner.setLazyDecoding(true);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scanner.scan(channel, new ConsumingObserver(blackhole));
+        }
+    }
+
+    @Benchmark
+    public void scanMapped(Blackhole blackhole) throws IOException {
+        scanner.scanMapped(file, new ConsumingObserver(blackhole));
+    }
+
+    /**
+     * Touches the first char of each line, as a typical observer would, without retaining anything
+     */
+    static class ConsumingObserver implements ChannelLineScanner.Observer {
+        private final Blackhole blackhole;
+
+        ConsumingObserver(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public boolean observeLine(CharSequence line, long position) {
+            blackhole.consume(line.length() > 0 ? line.charAt(0) : ' ');
+            blackhole.consume(position);
+            return true;
+        }
+
+        @Override
+        public void observeEndOfFile(long position) {
+            blackhole.consume(position);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package me.itzg.utils.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates reproducible content for the benchmarks.
+ */
+class SyntheticContent {
+    // mostly ASCII with some Latin-1 and, for charsets that can encode it, multi-byte content
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789,;:éü";
+    private static final String WIDE_ALPHABET = ALPHABET + "☃€";
+
+    private SyntheticContent() {
+    }
+
+    /**
+     * @param lineLengths one of <code>short</code> (metrics-like lines of 10-40 chars), <code>mixed</code>
+     *                    (log-like lines of 40-300 chars) or <code>long</code> (occasional records of 1-64K
+     *                    chars amongst mixed lines)
+     */
+    static Path createFile(long approximateSize, String lineLengths, Charset charset, String delimiter)
+            throws IOException {
+        final Path file = Files.createTempFile("benchmark", ".txt");
+        file.toFile().deleteOnExit();
+
+        final Random random = new Random(approximateSize);
+        final String alphabet = charset.newEncoder().canEncode('☃') ? WIDE_ALPHABET : ALPHABET;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), charset))) {
+            long written = 0;
+            while (written < approximateSize) {
+                final int length = lineLength(random, lineLengths);
+                for (int i = 0; i < length; ++i) {
+                    writer.write(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                writer.write(delimiter);
+                written += length + delimiter.length();
+            }
+        }
+        return file;
+    }
+
+    static String randomFragment(Random random, int maxLength) {
+        final StringBuilder sb = new StringBuilder();
+        final int length = 1 + random.nextInt(maxLength);
+        for (int i = 0; i < length; ++i) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static int lineLength(Random random, String lineLengths) {
+        switch (lineLengths) {
+            case "short":
+                return 10 + random.nextInt(30);
+            case "mixed":
+                return 40 + random.nextInt(260);
+            case "long":
+                return random.nextInt(100) == 0 ? 1024 + random.nextInt(63 * 1024) : 40 + random.nextInt(260);
+            default:
+                throw new IllegalArgumentException("Unknown line lengths: " + lineLengths);
+        }
+    }
+}
@@ -1,28 +1,74 @@
 package me.itzg.utils;
 
+import me.itzg.utils.io.ByteSequence;
+
 import java.io.IOException;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * This performs zero-copy appending of {@link java.lang.CharSequence}s into a unified instance
  * that supports all the usual operations such as {@link java.lang.CharSequence#charAt(int)} and
  * {@link java.lang.CharSequence#subSequence(int, int)} arbitrarily across the appended content
  * also in a zero-copy manner.
+ * <p>Content can also be spliced in with {@link #insert(int, CharSequence)} and removed with
+ * {@link #delete(int, int)}, which retain the content of the affected chunks and only rearrange the
+ * chunk index. For heavy editing of content made of very many pieces, {@link CharRope} provides
+ * those operations in logarithmic time.</p>
+ * <p>Content that is retained long term, such as lines from a scanner whose buffers are reused, can be
+ * copied in with {@link #appendCompact(CharSequence)} and the <code>appendLatin1</code> methods, which
+ * store ISO-8859-1 content at one byte per char in slabs shared by the chunks.</p>
  *
  * @author Geoff Bourne
  * @since 12/6/2014
  */
 public class AppendableCharSequence implements CharSequence, Appendable {
-    private TreeMap<Integer, CharSequence> sequences = new TreeMap<>();
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int TRANSFER_SIZE = 8192;
+    private static final int RECENT_CHUNKS = 4;
+    private static final int SLAB_SIZE = 8192;
+
+    // parallel arrays where chunks[i] starts at offsets[i] of the overall content, so offsets are ascending
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private CharSequence[] chunks = new CharSequence[INITIAL_CAPACITY];
+    private int chunkCount;
 
     // total running length
     private int length;
 
     // used to optimize repeated, sequential calls to charAt
-    private Map.Entry<Integer, CharSequence> cachedEntry;
-    private int endOfCachedEntry;
+    private int cachedChunk = -1;
+    private int startOfCachedChunk;
+    private int endOfCachedChunk;
+    // chunks recently accessed by charAt, which are revisited by backtracking such as that of a regex
+    private final int[] recentChunks = new int[RECENT_CHUNKS];
+    private int nextRecentChunk;
+
+    // the hash of the content of the first hashedChunks chunks, which is extended as needed
+    private int hash;
+    private int hashedChunks;
+
+    // memoized until the next modification
+    private String string;
+
+    // the slab that compactly appended content is currently copied into
+    private byte[] slab;
+    private int slabUsed;
+
+    // reused by the bulk transfer operations
+    private char[] transferChars;
+    private CharsetEncoder encoder;
+    private ByteBuffer encoded;
 
     public AppendableCharSequence() {
     }
@@ -37,13 +83,103 @@ public class AppendableCharSequence implements CharSequence, Appendable {
      * @return itself to enable method chaining
      */
     public AppendableCharSequence append(CharSequence charSequence) {
+        final int appendedLength = charSequence.length();
+        if (appendedLength == 0) {
+            return this;
+        }
 
-        sequences.put(length, charSequence);
-        length += charSequence.length();
+        if (chunkCount == chunks.length) {
+            offsets = Arrays.copyOf(offsets, chunkCount * 2);
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        offsets[chunkCount] = length;
+        chunks[chunkCount] = charSequence;
+        ++chunkCount;
+        length += appendedLength;
+        string = null;
 
         return this;
     }
 
+    /**
+     * Appends a copy of the given ISO-8859-1 bytes, stored at one byte per char.
+     * @param bytes the bytes from the position to the limit are copied without changing the position
+     * @return itself to enable method chaining
+     */
+    public AppendableCharSequence appendLatin1(ByteBuffer bytes) {
+        final int appendedLength = bytes.remaining();
+        final byte[] target = slabFor(appendedLength);
+        final int offset = target == slab ? slabUsed : 0;
+        final ByteBuffer source = bytes.duplicate();
+        source.get(target, offset, appendedLength);
+        return appendSlab(target, offset, appendedLength);
+    }
+
+    /**
+     * Appends a copy of the given ISO-8859-1 bytes, stored at one byte per char.
+     * @return itself to enable method chaining
+     */
+    public AppendableCharSequence appendLatin1(byte[] bytes, int offset, int length) {
+        final byte[] target = slabFor(length);
+        final int targetOffset = target == slab ? slabUsed : 0;
+        System.arraycopy(bytes, offset, target, targetOffset, length);
+        return appendSlab(target, targetOffset, length);
+    }
+
+    /**
+     * Appends a copy of the given content. Content that is entirely ISO-8859-1 is stored at one byte per
+     * char, which for a {@link ByteSequence} of ISO-8859-1 is a direct copy of its bytes; any other
+     * content is copied into a {@link String}.
+     * @param charSequence the content to copy and append
+     * @return itself to enable method chaining
+     */
+    public AppendableCharSequence appendCompact(CharSequence charSequence) {
+        if (charSequence instanceof ByteSequence &&
+                ((ByteSequence) charSequence).getCharset().equals(StandardCharsets.ISO_8859_1)) {
+            final ByteSequence byteSequence = (ByteSequence) charSequence;
+            final int appendedLength = byteSequence.byteLength();
+            final byte[] target = slabFor(appendedLength);
+            final int offset = target == slab ? slabUsed : 0;
+            byteSequence.getBytes(target, offset);
+            return appendSlab(target, offset, appendedLength);
+        }
+
+        final int appendedLength = charSequence.length();
+        final byte[] target = slabFor(appendedLength);
+        final int offset = target == slab ? slabUsed : 0;
+        for (int i = 0; i < appendedLength; ++i) {
+            final char c = charSequence.charAt(i);
+            if (c > 0xff) {
+                // abandons the slab region, which is reused by the next compact append
+                return append(charSequence.toString());
+            }
+            target[offset + i] = (byte) c;
+        }
+        return appendSlab(target, offset, appendedLength);
+    }
+
+    /**
+     * @return the current slab if it has room for the given length, otherwise a new slab or, for lengths
+     * that would waste much of a slab, a dedicated array
+     */
+    private byte[] slabFor(int length) {
+        if (length > SLAB_SIZE / 4) {
+            return new byte[length];
+        }
+        if (slab == null || SLAB_SIZE - slabUsed < length) {
+            slab = new byte[SLAB_SIZE];
+            slabUsed = 0;
+        }
+        return slab;
+    }
+
+    private AppendableCharSequence appendSlab(byte[] target, int offset, int length) {
+        if (target == slab) {
+            slabUsed += length;
+        }
+        return append(new Latin1Chunk(target, offset, length));
+    }
+
     @Override
     public Appendable append(CharSequence csq, int start, int end) throws IOException {
         return append(csq.subSequence(start, end));
@@ -54,6 +190,10 @@ public class AppendableCharSequence implements CharSequence, Appendable {
         return append(String.valueOf(c));
     }
 
+    /**
+     * Compares the content, regardless of how it was split into appended chunks, with that of another
+     * instance.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -61,14 +201,48 @@ public class AppendableCharSequence implements CharSequence, Appendable {
 
         AppendableCharSequence that = (AppendableCharSequence) o;
 
-        if (!sequences.equals(that.sequences)) return false;
+        if (length != that.length) return false;
+        if (hashCode() != that.hashCode()) return false;
+
+        // walk both sets of chunks in step
+        int thatChunk = 0, thatIndex = 0;
+        for (int i = 0; i < chunkCount; ++i) {
+            final CharSequence chunk = chunks[i];
+            final int chunkLength = chunk.length();
+            for (int j = 0; j < chunkLength; ++j) {
+                while (thatIndex == that.chunks[thatChunk].length()) {
+                    ++thatChunk;
+                    thatIndex = 0;
+                }
+                if (chunk.charAt(j) != that.chunks[thatChunk].charAt(thatIndex++)) return false;
+            }
+        }
 
         return true;
     }
 
+    /**
+     * @return the same hash as that of a {@link String} of the content. It is extended incrementally
+     * over the chunks appended since it was last computed, so the content of appended chunks must not be
+     * modified after the fact.
+     */
     @Override
     public int hashCode() {
-        return sequences.hashCode();
+        int h = hash;
+        for (int i = hashedChunks; i < chunkCount; ++i) {
+            final CharSequence chunk = chunks[i];
+            final int chunkLength = chunk.length();
+            if (chunk instanceof String || chunk instanceof AppendableCharSequence || chunk instanceof CharRope) {
+                // since h(a + b) = h(a) * 31^|b| + h(b), which also makes use of the chunk's own cached hash
+                h = h * CharSequences.pow31(chunkLength) + chunk.hashCode();
+            }
+            else {
+                h = CharSequences.hash(h, chunk, 0, chunkLength);
+            }
+        }
+        hash = h;
+        hashedChunks = chunkCount;
+        return h;
     }
 
     @Override
@@ -76,13 +250,24 @@ public class AppendableCharSequence implements CharSequence, Appendable {
         return length;
     }
 
+    /**
+     * @return the content, which is memoized until the next modification
+     */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        for (CharSequence seq : sequences.values()) {
-            sb.append(seq);
+        String result = string;
+        if (result == null) {
+            if (chunkCount == 1 && chunks[0] instanceof String) {
+                result = (String) chunks[0];
+            }
+            else {
+                final char[] chars = new char[length];
+                getChars(0, length, chars, 0);
+                result = new String(chars);
+            }
+            string = result;
         }
-        return sb.toString();
+        return result;
     }
 
     @Override
@@ -90,56 +275,666 @@ public class AppendableCharSequence implements CharSequence, Appendable {
         if (index >= length) {
             throw new IllegalArgumentException("index cannot be greater than current length");
         }
+        if (index < 0) {
+            throw new IllegalArgumentException("index cannot be negative");
+        }
+
+        if (cachedChunk == -1 || index < startOfCachedChunk || index >= endOfCachedChunk) {
+            moveCursor(index);
+        }
+
+        return chunks[cachedChunk].charAt(index - startOfCachedChunk);
+    }
+
+    /**
+     * Makes the chunk containing the given index the cached one, trying in order the neighbors of the
+     * currently cached chunk, since access tends to step forward or backward one char at a time, then
+     * the recently cached chunks and finally a binary search.
+     */
+    private void moveCursor(int index) {
+        int chunk = -1;
+        if (cachedChunk != -1) {
+            if (index >= endOfCachedChunk && cachedChunk + 1 < chunkCount && contains(cachedChunk + 1, index)) {
+                chunk = cachedChunk + 1;
+            }
+            else if (index < startOfCachedChunk && cachedChunk > 0 && contains(cachedChunk - 1, index)) {
+                chunk = cachedChunk - 1;
+            }
+            else {
+                for (int recent : recentChunks) {
+                    if (recent < chunkCount && contains(recent, index)) {
+                        chunk = recent;
+                        break;
+                    }
+                }
+            }
+            recentChunks[nextRecentChunk] = cachedChunk;
+            nextRecentChunk = (nextRecentChunk + 1) % RECENT_CHUNKS;
+        }
+        if (chunk == -1) {
+            chunk = chunkContaining(index);
+        }
+
+        cachedChunk = chunk;
+        startOfCachedChunk = offsets[chunk];
+        endOfCachedChunk = startOfCachedChunk + chunks[chunk].length();
+    }
+
+    private boolean contains(int chunk, int index) {
+        return index >= offsets[chunk] && index < offsets[chunk] + chunks[chunk].length();
+    }
+
+    /**
+     * @return the index of the first occurrence of the given char at or after <code>fromIndex</code> or -1
+     * if none
+     */
+    public int indexOf(char c, int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex >= length) {
+            return -1;
+        }
+        for (int i = chunkContaining(fromIndex); i < chunkCount; ++i) {
+            final int startOfChunk = offsets[i];
+            final int found = indexOf(chunks[i], c, Math.max(fromIndex - startOfChunk, 0));
+            if (found != -1) {
+                return startOfChunk + found;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(char c) {
+        return indexOf(c, 0);
+    }
+
+    /**
+     * @return the index of the last occurrence of the given char at or before <code>fromIndex</code> or -1
+     * if none
+     */
+    public int lastIndexOf(char c, int fromIndex) {
+        if (fromIndex >= length) {
+            fromIndex = length - 1;
+        }
+        if (fromIndex < 0) {
+            return -1;
+        }
+        for (int i = chunkContaining(fromIndex); i >= 0; --i) {
+            final int startOfChunk = offsets[i];
+            final int found = lastIndexOf(chunks[i], c, Math.min(fromIndex - startOfChunk, chunks[i].length() - 1));
+            if (found != -1) {
+                return startOfChunk + found;
+            }
+        }
+        return -1;
+    }
+
+    public int lastIndexOf(char c) {
+        return lastIndexOf(c, length - 1);
+    }
+
+    /**
+     * Finds content in the manner of {@link String#indexOf(String, int)}, even where it spans chunks.
+     * @return the index of the first occurrence of the given content at or after <code>fromIndex</code>
+     * or -1 if none
+     */
+    public int indexOf(CharSequence target, int fromIndex) {
+        final int targetLength = target.length();
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (targetLength == 0) {
+            return Math.min(fromIndex, length);
+        }
+
+        final char first = target.charAt(0);
+        final int max = length - targetLength;
+        for (int i = fromIndex; i <= max; ++i) {
+            i = indexOf(first, i);
+            if (i == -1 || i > max) {
+                return -1;
+            }
+            if (regionMatches(i, target, 0, targetLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(CharSequence target) {
+        return indexOf(target, 0);
+    }
+
+    /**
+     * Finds content in the manner of {@link String#lastIndexOf(String, int)}, even where it spans chunks.
+     * @return the index of the last occurrence of the given content starting at or before
+     * <code>fromIndex</code> or -1 if none
+     */
+    public int lastIndexOf(CharSequence target, int fromIndex) {
+        final int targetLength = target.length();
+        fromIndex = Math.min(fromIndex, length - targetLength);
+        if (fromIndex < 0) {
+            return -1;
+        }
+        if (targetLength == 0) {
+            return fromIndex;
+        }
+
+        final char first = target.charAt(0);
+        for (int i = fromIndex; i >= 0; --i) {
+            i = lastIndexOf(first, i);
+            if (i == -1) {
+                return -1;
+            }
+            if (regionMatches(i, target, 0, targetLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int lastIndexOf(CharSequence target) {
+        return lastIndexOf(target, length);
+    }
+
+    public boolean startsWith(CharSequence prefix) {
+        return regionMatches(0, prefix, 0, prefix.length());
+    }
+
+    public boolean startsWith(CharSequence prefix, int offset) {
+        return regionMatches(offset, prefix, 0, prefix.length());
+    }
+
+    public boolean endsWith(CharSequence suffix) {
+        return regionMatches(length - suffix.length(), suffix, 0, suffix.length());
+    }
 
-        Map.Entry<Integer, CharSequence> entry = cachedEntry;
-        if (entry == null || index < entry.getKey() || index >= endOfCachedEntry) {
-            entry = sequences.floorEntry(index);
-            cachedEntry = entry;
-            endOfCachedEntry = entry.getKey() + entry.getValue().length();
+    /**
+     * Compares regions in the manner of {@link String#regionMatches(int, String, int, int)}, comparing each
+     * chunk involved directly.
+     */
+    public boolean regionMatches(int offset, CharSequence other, int otherOffset, int len) {
+        return regionMatches(false, offset, other, otherOffset, len);
+    }
+
+    /**
+     * Compares regions in the manner of {@link String#regionMatches(boolean, int, String, int, int)},
+     * comparing each chunk involved directly.
+     */
+    public boolean regionMatches(boolean ignoreCase, int offset, CharSequence other, int otherOffset, int len) {
+        if (offset < 0 || otherOffset < 0 ||
+                offset > (long) length - len || otherOffset > (long) other.length() - len) {
+            return false;
+        }
+        if (len <= 0) {
+            return true;
         }
 
-        return entry.getValue().charAt(index - entry.getKey());
+        final int end = offset + len;
+        for (int i = chunkContaining(offset); offsets[i] < end; ++i) {
+            final int startOfChunk = offsets[i];
+            final CharSequence chunk = chunks[i];
+            final int from = Math.max(offset, startOfChunk) - startOfChunk;
+            final int to = Math.min(end, startOfChunk + chunk.length()) - startOfChunk;
+            final int otherFrom = otherOffset + startOfChunk + from - offset;
+            if (chunk instanceof String && other instanceof String) {
+                if (!((String) chunk).regionMatches(ignoreCase, from, (String) other, otherFrom, to - from)) {
+                    return false;
+                }
+            }
+            else {
+                for (int j = from, k = otherFrom; j < to; ++j, ++k) {
+                    if (!charsMatch(ignoreCase, chunk.charAt(j), other.charAt(k))) {
+                        return false;
+                    }
+                }
+            }
+            if (i + 1 == chunkCount) {
+                break;
+            }
+        }
+        return true;
     }
 
+    private static boolean charsMatch(boolean ignoreCase, char c1, char c2) {
+        if (c1 == c2) {
+            return true;
+        }
+        if (ignoreCase) {
+            // the same as String.regionMatches, which also accounts for alphabets with odd case rules
+            final char u1 = Character.toUpperCase(c1);
+            final char u2 = Character.toUpperCase(c2);
+            return u1 == u2 || Character.toLowerCase(u1) == Character.toLowerCase(u2);
+        }
+        return false;
+    }
+
+    private static int indexOf(CharSequence chunk, char c, int from) {
+        if (chunk instanceof String) {
+            return ((String) chunk).indexOf(c, from);
+        }
+        final int chunkLength = chunk.length();
+        for (int i = from; i < chunkLength; ++i) {
+            if (chunk.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence chunk, char c, int from) {
+        if (chunk instanceof String) {
+            return ((String) chunk).lastIndexOf(c, from);
+        }
+        for (int i = from; i >= 0; --i) {
+            if (chunk.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the given range of the content. When it spans more than one chunk, it is a view that shares
+     * the chunks of this instance and is unaffected by later modifications of this instance.
+     */
     @Override
     public CharSequence subSequence(int start, int end) {
-        if (start >= length || end >= length) {
+        if (start > length || end > length) {
             throw new IllegalArgumentException("start or end cannot be greater than length");
         }
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Requested sub-sequence did not fall within contained bounds");
+        }
+        if (start == end) {
+            return "";
+        }
 
-        Integer startOfSubMap = sequences.lowerKey(start);
-        NavigableMap<Integer, CharSequence> slice = sequences.subMap(startOfSubMap, true, end, true);
+        final int firstChunk = chunkContaining(offsets, 0, chunkCount - 1, start);
+        final int lastChunk = chunkContaining(offsets, firstChunk, chunkCount - 1, end - 1);
 
         // if there's only one CharSequence involved, then it's easy...
-        if (slice.size() == 1) {
-            Map.Entry<Integer, CharSequence> chunk = slice.firstEntry();
-            Integer startOfChunk = chunk.getKey();
-            return chunk.getValue().subSequence(start - startOfChunk, end - startOfChunk);
+        if (firstChunk == lastChunk) {
+            final int startOfChunk = offsets[firstChunk];
+            return chunks[firstChunk].subSequence(start - startOfChunk, end - startOfChunk);
+        }
+
+        // ...otherwise, it's a view of the chunks involved
+        return new Slice(chunks, offsets, firstChunk, lastChunk, start, end - start);
+    }
+
+    /**
+     * Inserts content at the given index, splitting the chunk there without copying its content if needed.
+     * @param index the index at which the inserted content will start
+     * @param charSequence the content to insert
+     * @return itself to enable method chaining
+     */
+    public AppendableCharSequence insert(int index, CharSequence charSequence) {
+        if (index < 0 || index > length) {
+            throw new IllegalArgumentException("index must be within the current length");
+        }
+        if (index == length) {
+            return append(charSequence);
+        }
+        if (charSequence.length() == 0) {
+            return this;
+        }
+
+        final int chunk = chunkContaining(index);
+        final int startOfChunk = offsets[chunk];
+        final CharSequence existing = chunks[chunk];
+        splice(chunk, chunk + 1,
+                slice(existing, 0, index - startOfChunk),
+                charSequence,
+                slice(existing, index - startOfChunk, existing.length()));
+        return this;
+    }
+
+    /**
+     * Removes content, retaining without copying the remaining content of any partially removed chunks.
+     * @param start the index of the first char to remove
+     * @param end the index after the last char to remove
+     * @return itself to enable method chaining
+     */
+    public AppendableCharSequence delete(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IllegalArgumentException("Requested range did not fall within contained bounds");
+        }
+        if (start == end) {
+            return this;
         }
-        else if (slice.size() > 1) {
-            // ...otherwise, we'll build up another one of our own kind
-            AppendableCharSequence result = new AppendableCharSequence();
 
-            for (Map.Entry<Integer, CharSequence> chunk : slice.entrySet()) {
-                Integer startOfChunk = chunk.getKey();
-                CharSequence charSequence = chunk.getValue();
-                int endOfChunk = startOfChunk + charSequence.length();
+        final int firstChunk = chunkContaining(start);
+        final int lastChunk = chunkContaining(offsets, firstChunk, chunkCount - 1, end - 1);
+        final CharSequence last = chunks[lastChunk];
+        splice(firstChunk, lastChunk + 1,
+                slice(chunks[firstChunk], 0, start - offsets[firstChunk]),
+                slice(last, end - offsets[lastChunk], last.length()));
+        return this;
+    }
+
+    /**
+     * Replaces the chunks from <code>from</code>, inclusive, to <code>to</code>, exclusive. The replacement
+     * is made in new arrays, since {@link Slice}s may share the current ones.
+     */
+    private void splice(int from, int to, CharSequence... replacements) {
+        final int newCount = chunkCount - (to - from) + replacements.length;
+        final int capacity = Math.max(INITIAL_CAPACITY, newCount + newCount / 2);
+        final int[] newOffsets = new int[capacity];
+        final CharSequence[] newChunks = new CharSequence[capacity];
+        System.arraycopy(offsets, 0, newOffsets, 0, from);
+        System.arraycopy(chunks, 0, newChunks, 0, from);
+
+        int count = from;
+        int position = from < chunkCount ? offsets[from] : length;
+        for (CharSequence replacement : replacements) {
+            if (replacement.length() != 0) {
+                newOffsets[count] = position;
+                newChunks[count++] = replacement;
+                position += replacement.length();
+            }
+        }
+        for (int i = to; i < chunkCount; ++i) {
+            newOffsets[count] = position;
+            newChunks[count++] = chunks[i];
+            position += chunks[i].length();
+        }
+
+        offsets = newOffsets;
+        chunks = newChunks;
+        chunkCount = count;
+        length = position;
+
+        cachedChunk = -1;
+        hash = 0;
+        hashedChunks = 0;
+        string = null;
+    }
+
+    /**
+     * @return the given range of a chunk without copying its content
+     */
+    private static CharSequence slice(CharSequence chunk, int start, int end) {
+        if (start == 0 && end == chunk.length()) {
+            return chunk;
+        }
+        if (start == end) {
+            return "";
+        }
+        if (chunk instanceof Slice) {
+            return chunk.subSequence(start, end);
+        }
+        return new Slice(new CharSequence[]{chunk}, new int[]{0}, 0, 0, start, end - start);
+    }
 
-                int startOfSubSeq = start > startOfChunk ? start - startOfChunk : 0;
-                int endOfSubSeq = (end < endOfChunk ? end : endOfChunk) - startOfChunk;
+    /**
+     * Copies chars into the given array in the manner of {@link String#getChars(int, int, char[], int)},
+     * visiting each chunk once rather than looking up each char.
+     * @param srcBegin the index of the first char to copy
+     * @param srcEnd the index after the last char to copy
+     * @param dst the destination array
+     * @param dstBegin the index in the destination at which to place the first char
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (srcBegin < 0 || srcEnd > length || srcBegin > srcEnd) {
+            throw new IndexOutOfBoundsException("Range " + srcBegin + "-" + srcEnd + " is not within length " + length);
+        }
+        if (dstBegin < 0 || dstBegin + (srcEnd - srcBegin) > dst.length) {
+            throw new IndexOutOfBoundsException("Destination is too small");
+        }
+        if (srcBegin == srcEnd) {
+            return;
+        }
+
+        getChars(chunks, offsets, chunkContaining(srcBegin), chunkCount - 1, srcBegin, srcEnd, dst, dstBegin);
+    }
 
-                if (startOfSubSeq == 0 && endOfSubSeq == charSequence.length()) {
-                    result.append(charSequence);
+    /**
+     * Copies chars from the chunks, where <code>srcBegin</code> and <code>srcEnd</code> are in terms of the
+     * offsets and <code>firstChunk</code> contains <code>srcBegin</code>.
+     */
+    private static void getChars(CharSequence[] chunks, int[] offsets, int firstChunk, int lastChunk,
+                                 int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        for (int i = firstChunk; i <= lastChunk && offsets[i] < srcEnd; ++i) {
+            final int startOfChunk = offsets[i];
+            final int from = Math.max(srcBegin, startOfChunk) - startOfChunk;
+            final int to = Math.min(srcEnd, startOfChunk + chunks[i].length()) - startOfChunk;
+            CharSequences.copyChars(chunks[i], from, to, dst, dstBegin + startOfChunk + from - srcBegin);
+        }
+    }
+
+    /**
+     * Copies all of the content into the given buffer, advancing its position.
+     * @param dst the destination buffer
+     * @throws BufferOverflowException if the buffer does not have room for all of the content
+     */
+    public void copyTo(CharBuffer dst) {
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        if (dst.hasArray()) {
+            getChars(0, length, dst.array(), dst.arrayOffset() + dst.position());
+            dst.position(dst.position() + length);
+        }
+        else {
+            for (int i = 0; i < chunkCount; ++i) {
+                final CharSequence chunk = chunks[i];
+                if (chunk instanceof String) {
+                    dst.put((String) chunk);
                 }
                 else {
-                    result.append(charSequence.subSequence(startOfSubSeq, endOfSubSeq));
+                    dst.append(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends all of the content to the given destination chunk by chunk without materializing it as
+     * a single {@link String}.
+     * @param appendable the destination
+     * @throws IOException if the destination fails to accept the content
+     */
+    public void writeTo(Appendable appendable) throws IOException {
+        for (int i = 0; i < chunkCount; ++i) {
+            final CharSequence chunk = chunks[i];
+            if (chunk instanceof AppendableCharSequence) {
+                ((AppendableCharSequence) chunk).writeTo(appendable);
+            }
+            else {
+                appendable.append(chunk);
+            }
+        }
+    }
+
+    /**
+     * Writes all of the content to the given writer. Chunks that are not {@link String}s are transferred
+     * through a reused array since {@link Writer#append(CharSequence)} would otherwise convert each to
+     * a {@link String}.
+     * @param writer the destination
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        for (int i = 0; i < chunkCount; ++i) {
+            final CharSequence chunk = chunks[i];
+            if (chunk instanceof String) {
+                writer.write((String) chunk);
+            }
+            else {
+                final char[] transfer = transferChars();
+                final int chunkLength = chunk.length();
+                for (int pos = 0; pos < chunkLength; pos += transfer.length) {
+                    final int count = Math.min(transfer.length, chunkLength - pos);
+                    CharSequences.copyChars(chunk, pos, pos + count, transfer, 0);
+                    writer.write(transfer, 0, count);
                 }
             }
+        }
+    }
 
-            return result;
+    /**
+     * Encodes all of the content directly into the given channel, which allows for streaming it to a
+     * socket or file without materializing it as a single {@link String} or byte array. The encoder and
+     * buffers are retained and reused by subsequent calls. Malformed or unmappable content is replaced in
+     * the same way as {@link String#getBytes(java.nio.charset.Charset)}.
+     * @param channel a blocking channel to receive the encoded content
+     * @param charset the charset with which to encode
+     * @return the number of bytes written
+     * @throws IOException if writing to the channel fails
+     */
+    public long encodeTo(WritableByteChannel channel, Charset charset) throws IOException {
+        if (encoder == null || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoded = ByteBuffer.allocate((int) (TRANSFER_SIZE * encoder.maxBytesPerChar()));
         }
         else {
-            throw new IllegalArgumentException("Requested sub-sequence did not fall within contained bounds");
+            encoder.reset();
+        }
+        // wraps the transfer array so that any surrogate split across a transfer is carried over
+        final CharBuffer chars = CharBuffer.wrap(transferChars());
+        encoded.clear();
+
+        long written = 0;
+        int pos = 0;
+        boolean endOfInput;
+        do {
+            final int count = Math.min(chars.remaining(), length - pos);
+            getChars(pos, pos + count, chars.array(), chars.position());
+            chars.position(chars.position() + count);
+            pos += count;
+            endOfInput = pos == length;
+
+            chars.flip();
+            CoderResult result;
+            while ((result = encoder.encode(chars, encoded, endOfInput)).isOverflow()) {
+                written += drain(channel);
+            }
+            throwIfError(result);
+            chars.compact();
+        } while (!endOfInput);
+
+        CoderResult result;
+        while ((result = encoder.flush(encoded)).isOverflow()) {
+            written += drain(channel);
+        }
+        throwIfError(result);
+        written += drain(channel);
+
+        return written;
+    }
+
+    private int drain(WritableByteChannel channel) throws IOException {
+        encoded.flip();
+        final int count = encoded.remaining();
+        while (encoded.hasRemaining()) {
+            channel.write(encoded);
+        }
+        encoded.clear();
+        return count;
+    }
+
+    private static void throwIfError(CoderResult result) throws CharacterCodingException {
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    private char[] transferChars() {
+        if (transferChars == null) {
+            transferChars = new char[TRANSFER_SIZE];
+        }
+        return transferChars;
+    }
+
+    /**
+     * @param index an index within the overall content
+     * @return the index of the chunk containing it, found by binary search of the chunk offsets
+     */
+    private int chunkContaining(int index) {
+        return chunkContaining(offsets, 0, chunkCount - 1, index);
+    }
+
+    /**
+     * @return the index of the chunk containing the given index, searching between the given chunks, inclusive
+     */
+    private static int chunkContaining(int[] offsets, int low, int high, int index) {
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A zero-copy view of a range of content that spans chunks. The chunk arrays it shares are never
+     * modified in the range it covers, since appends only fill unused elements and other modifications
+     * replace the arrays.
+     */
+    static final class Slice implements CharSequence {
+        private final CharSequence[] chunks;
+        private final int[] offsets;
+        private final int firstChunk;
+        private final int lastChunk;
+        // in terms of the offsets
+        private final int start;
+        private final int length;
+
+        Slice(CharSequence[] chunks, int[] offsets, int firstChunk, int lastChunk, int start, int length) {
+            this.chunks = chunks;
+            this.offsets = offsets;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " is not within length " + length);
+            }
+            final int position = start + index;
+            final int chunk = chunkContaining(offsets, firstChunk, lastChunk, position);
+            return chunks[chunk].charAt(position - offsets[chunk]);
+        }
+
+        @Override
+        public CharSequence subSequence(int subStart, int subEnd) {
+            if (subStart < 0 || subEnd > length || subStart > subEnd) {
+                throw new IndexOutOfBoundsException("Range " + subStart + "-" + subEnd + " is not within length " + length);
+            }
+            if (subStart == subEnd) {
+                return "";
+            }
+            final int from = chunkContaining(offsets, firstChunk, lastChunk, start + subStart);
+            final int to = chunkContaining(offsets, from, lastChunk, start + subEnd - 1);
+            return new Slice(chunks, offsets, from, to, start + subStart, subEnd - subStart);
+        }
+
+        void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+            final int first = chunkContaining(offsets, firstChunk, lastChunk, start + srcBegin);
+            AppendableCharSequence.getChars(chunks, offsets, first, lastChunk,
+                    start + srcBegin, start + srcEnd, dst, dstBegin);
+        }
+
+        @Override
+        public String toString() {
+            final char[] chars = new char[length];
+            getChars(0, length, chars, 0);
+            return new String(chars);
         }
     }
 }
@@ -0,0 +1,287 @@
+package me.itzg.utils;
+
+import java.util.Arrays;
+
+/**
+ * An immutable {@link CharSequence} represented as a balanced binary tree of other char sequences,
+ * which makes concatenation, {@link #subSequence(int, int)}, {@link #insert(int, CharSequence)} and
+ * {@link #delete(int, int)} logarithmic in the number of pieces rather than linear in the length
+ * of the content. Each of those operations shares the structure and the content of the original rather
+ * than copying it, so the original remains valid and unchanged.
+ * <p>Like {@link AppendableCharSequence}, the given sequences are retained rather than copied, so they must
+ * not be modified after the fact.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public final class CharRope implements CharSequence {
+    /**
+     * Short pieces are combined into a single copied piece rather than given nodes of their own, since
+     * the copy is cheaper than the overhead of a node
+     */
+    static final int SHORT_PIECE_LENGTH = 32;
+
+    public static final CharRope EMPTY = new CharRope("", 0, 0);
+
+    // a leaf is a range of a sequence...
+    private final CharSequence piece;
+    private final int pieceStart;
+    // ...and a node is the concatenation of two ropes
+    private final CharRope left;
+    private final CharRope right;
+
+    private final int length;
+    private final int depth;
+
+    // zero until computed, as with String, so content that hashes to zero is just hashed again each time
+    private int hash;
+
+    private CharRope(CharSequence piece, int pieceStart, int length) {
+        this.piece = piece;
+        this.pieceStart = pieceStart;
+        this.left = null;
+        this.right = null;
+        this.length = length;
+        this.depth = 0;
+    }
+
+    private CharRope(CharRope left, CharRope right) {
+        this.piece = null;
+        this.pieceStart = 0;
+        this.left = left;
+        this.right = right;
+        this.length = left.length + right.length;
+        this.depth = Math.max(left.depth, right.depth) + 1;
+    }
+
+    /**
+     * @param content the content of the rope, which is retained rather than copied
+     * @return a rope of the given content
+     */
+    public static CharRope of(CharSequence content) {
+        if (content instanceof CharRope) {
+            return (CharRope) content;
+        }
+        if (content.length() == 0) {
+            return EMPTY;
+        }
+        return new CharRope(content, 0, content.length());
+    }
+
+    /**
+     * @return a rope of this content followed by the given content
+     */
+    public CharRope concat(CharSequence content) {
+        return join(this, of(content));
+    }
+
+    /**
+     * @return a rope with the given content inserted at the given index
+     * @throws IndexOutOfBoundsException if the index is negative or greater than the length
+     */
+    public CharRope insert(int index, CharSequence content) {
+        if (index < 0 || index > length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not within length " + length);
+        }
+        return join(join(slice(0, index), of(content)), slice(index, length));
+    }
+
+    /**
+     * @return a rope without the content from <code>start</code>, inclusive, to <code>end</code>, exclusive
+     * @throws IndexOutOfBoundsException if the range is not within the content
+     */
+    public CharRope delete(int start, int end) {
+        checkRange(start, end);
+        return join(slice(0, start), slice(end, length));
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not within length " + length);
+        }
+        CharRope rope = this;
+        while (rope.piece == null) {
+            if (index < rope.left.length) {
+                rope = rope.left;
+            }
+            else {
+                index -= rope.left.length;
+                rope = rope.right;
+            }
+        }
+        return rope.piece.charAt(rope.pieceStart + index);
+    }
+
+    /**
+     * @return a rope sharing the content of the given range of this one
+     */
+    @Override
+    public CharRope subSequence(int start, int end) {
+        checkRange(start, end);
+        return slice(start, end);
+    }
+
+    /**
+     * Copies chars into the given array in the manner of {@link String#getChars(int, int, char[], int)}.
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        checkRange(srcBegin, srcEnd);
+        if (dstBegin < 0 || dstBegin + (srcEnd - srcBegin) > dst.length) {
+            throw new IndexOutOfBoundsException("Destination is too small");
+        }
+        copyTo(srcBegin, srcEnd, dst, dstBegin);
+    }
+
+    @Override
+    public String toString() {
+        if (piece instanceof String && pieceStart == 0 && length == piece.length()) {
+            return (String) piece;
+        }
+        final char[] chars = new char[length];
+        copyTo(0, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * @return the same hash as that of a {@link String} of the content
+     */
+    @Override
+    public int hashCode() {
+        // read once, so a racing thread either sees the computed hash or computes it itself
+        int h = hash;
+        if (h == 0) {
+            if (piece != null) {
+                h = piece instanceof String && pieceStart == 0 && length == piece.length() ?
+                        piece.hashCode() : CharSequences.hash(0, piece, pieceStart, pieceStart + length);
+            }
+            else {
+                h = left.hashCode() * CharSequences.pow31(right.length) + right.hashCode();
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Compares the content, regardless of how it is divided into pieces, with that of another rope.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CharRope)) return false;
+
+        CharRope that = (CharRope) o;
+        if (length != that.length || hashCode() != that.hashCode()) return false;
+
+        final char[] these = new char[Math.min(length, 1024)];
+        final char[] those = new char[these.length];
+        for (int pos = 0; pos < length; pos += these.length) {
+            final int end = Math.min(length, pos + these.length);
+            copyTo(pos, end, these, 0);
+            that.copyTo(pos, end, those, 0);
+            if (!Arrays.equals(these, those)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the height of the tree, which is at most logarithmic in the number of pieces
+     */
+    int depth() {
+        return depth;
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " is not within length " + length);
+        }
+    }
+
+    private CharRope slice(int start, int end) {
+        if (start == 0 && end == length) {
+            return this;
+        }
+        if (start == end) {
+            return EMPTY;
+        }
+        if (piece != null) {
+            return new CharRope(piece, pieceStart + start, end - start);
+        }
+
+        final int leftLength = left.length;
+        if (end <= leftLength) {
+            return left.slice(start, end);
+        }
+        if (start >= leftLength) {
+            return right.slice(start - leftLength, end - leftLength);
+        }
+        return join(left.slice(start, leftLength), right.slice(0, end - leftLength));
+    }
+
+    private void copyTo(int start, int end, char[] dst, int dstBegin) {
+        if (piece != null) {
+            CharSequences.copyChars(piece, pieceStart + start, pieceStart + end, dst, dstBegin);
+            return;
+        }
+        final int leftLength = left.length;
+        if (start < leftLength) {
+            left.copyTo(start, Math.min(end, leftLength), dst, dstBegin);
+        }
+        if (end > leftLength) {
+            final int rightStart = Math.max(start, leftLength);
+            right.copyTo(rightStart - leftLength, end - leftLength, dst, dstBegin + rightStart - start);
+        }
+    }
+
+    /**
+     * Concatenates two ropes while keeping the depths of the children of each node within one of each
+     * other, in the manner of an AVL tree, which bounds the depth logarithmically.
+     */
+    private static CharRope join(CharRope a, CharRope b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length + b.length <= SHORT_PIECE_LENGTH) {
+            final char[] chars = new char[a.length + b.length];
+            a.copyTo(0, a.length, chars, 0);
+            b.copyTo(0, b.length, chars, a.length);
+            return new CharRope(new String(chars), 0, chars.length);
+        }
+
+        if (a.depth > b.depth + 1) {
+            return balance(a.left, join(a.right, b));
+        }
+        if (b.depth > a.depth + 1) {
+            return balance(join(a, b.left), b.right);
+        }
+        return new CharRope(a, b);
+    }
+
+    /**
+     * @return a node of the given children, rotated if their depths differ by more than one
+     */
+    private static CharRope balance(CharRope a, CharRope b) {
+        if (a.depth > b.depth + 1) {
+            if (a.left.depth >= a.right.depth) {
+                return new CharRope(a.left, new CharRope(a.right, b));
+            }
+            return new CharRope(new CharRope(a.left, a.right.left), new CharRope(a.right.right, b));
+        }
+        if (b.depth > a.depth + 1) {
+            if (b.right.depth >= b.left.depth) {
+                return new CharRope(new CharRope(a, b.left), b.right);
+            }
+            return new CharRope(new CharRope(a, b.left.left), new CharRope(b.left.right, b.right));
+        }
+        return new CharRope(a, b);
+    }
+}
@@ -0,0 +1,91 @@
+package me.itzg.utils;
+
+import java.nio.CharBuffer;
+
+/**
+ * Operations on arbitrary {@link CharSequence}s that are shared by the composite sequence types.
+ */
+final class CharSequences {
+    private CharSequences() {
+    }
+
+    /**
+     * Copies a range of the given sequence using the bulk operation of its type where there is one.
+     */
+    static void copyChars(CharSequence seq, int begin, int end, char[] dst, int dstBegin) {
+        if (seq instanceof String) {
+            ((String) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof StringBuilder) {
+            ((StringBuilder) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof StringBuffer) {
+            ((StringBuffer) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof AppendableCharSequence) {
+            ((AppendableCharSequence) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof Latin1Chunk) {
+            ((Latin1Chunk) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof AppendableCharSequence.Slice) {
+            ((AppendableCharSequence.Slice) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof ConcurrentAppendableCharSequence.Snapshot) {
+            ((ConcurrentAppendableCharSequence.Snapshot) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof CharRope) {
+            ((CharRope) seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if (seq instanceof CharBuffer) {
+            final CharBuffer source = ((CharBuffer) seq).duplicate();
+            source.position(source.position() + begin);
+            source.get(dst, dstBegin, end - begin);
+        }
+        else {
+            for (int i = begin; i < end; ++i) {
+                dst[dstBegin++] = seq.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * @return 31 raised to the given power with the same overflow as {@link String#hashCode()}, which
+     * allows for combining hashes since h(a + b) = h(a) * 31^|b| + h(b)
+     */
+    static int pow31(int exponent) {
+        int result = 1;
+        int base = 31;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the same hash as that of a {@link String} of the given range
+     */
+    static int hash(int h, CharSequence seq, int begin, int end) {
+        if (seq instanceof String) {
+            for (int i = begin; i < end; ++i) {
+                h = 31 * h + seq.charAt(i);
+            }
+            return h;
+        }
+
+        // composite sequences are much cheaper to access in bulk than char by char
+        final char[] block = new char[Math.min(end - begin, 256)];
+        for (int pos = begin; pos < end; pos += block.length) {
+            final int count = Math.min(block.length, end - pos);
+            copyChars(seq, pos, pos + count, block, 0);
+            for (int i = 0; i < count; ++i) {
+                h = 31 * h + block[i];
+            }
+        }
+        return h;
+    }
+}
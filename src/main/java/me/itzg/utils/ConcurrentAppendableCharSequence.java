@@ -0,0 +1,291 @@
+package me.itzg.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A variant of {@link AppendableCharSequence} that any number of threads may append to and read from
+ * concurrently without locking.
+ * <p>Each append reserves both its chunk slot and its offset within the content with a single atomic
+ * compare-and-set and then publishes its chunk into a segmented, lock-free array. Chunks become visible to readers
+ * in order, once all of those before them are also published, so readers always see a consistent
+ * prefix of the content. {@link #snapshot()} captures that prefix as an immutable view that remains
+ * valid while appending continues.</p>
+ * <p>As with {@link AppendableCharSequence}, appended content is retained rather than copied, so it must
+ * not be modified after the fact.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class ConcurrentAppendableCharSequence implements CharSequence, Appendable {
+    // segment k holds FIRST_SEGMENT_SIZE << k slots, which can address any slot up to Integer.MAX_VALUE
+    private static final int FIRST_SEGMENT_BITS = 5;
+    private static final int FIRST_SEGMENT_SIZE = 1 << FIRST_SEGMENT_BITS;
+    private static final int SEGMENTS = 32 - FIRST_SEGMENT_BITS;
+
+    private static final long ONE_SLOT = 1L << 32;
+    private static final long LENGTH_MASK = 0xffffffffL;
+
+    private final AtomicReferenceArray<Segment> segments = new AtomicReferenceArray<>(SEGMENTS);
+
+    // the number of slots in the upper half and the total length in the lower half
+    private final AtomicLong reserved = new AtomicLong();
+    // the same for the slots that have been published in order
+    private final AtomicLong published = new AtomicLong();
+
+    public ConcurrentAppendableCharSequence() {
+    }
+
+    public ConcurrentAppendableCharSequence(CharSequence initialContent) {
+        append(initialContent);
+    }
+
+    /**
+     * Appends the given {@link java.lang.CharSequence} onto the content of this instance. Content appended
+     * concurrently by different threads is ordered by when each reserved its place.
+     * @param charSequence the content to append
+     * @return itself to enable method chaining
+     * @throws IllegalStateException if the content would exceed the maximum length of a CharSequence, in
+     * which case nothing is reserved and shorter content may still be appended
+     */
+    public ConcurrentAppendableCharSequence append(CharSequence charSequence) {
+        final int appendedLength = charSequence.length();
+        if (appendedLength == 0) {
+            return this;
+        }
+
+        // checked before reserving, since a reserved slot must be published for the watermark to pass it
+        long reservation;
+        do {
+            reservation = reserved.get();
+            if ((reservation & LENGTH_MASK) + appendedLength > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Content cannot exceed " + Integer.MAX_VALUE + " chars");
+            }
+        } while (!reserved.compareAndSet(reservation, reservation + ONE_SLOT + appendedLength));
+        final int offset = (int) (reservation & LENGTH_MASK);
+
+        final int slot = (int) (reservation >>> 32);
+        final Segment segment = segmentFor(slot);
+        final int index = indexInSegment(slot);
+        segment.offsets[index] = offset;
+        // the volatile write publishes the offset along with the chunk
+        segment.chunks.set(index, charSequence);
+
+        advancePublished();
+        return this;
+    }
+
+    @Override
+    public ConcurrentAppendableCharSequence append(CharSequence csq, int start, int end) {
+        return append(csq.subSequence(start, end));
+    }
+
+    @Override
+    public ConcurrentAppendableCharSequence append(char c) {
+        return append(String.valueOf(c));
+    }
+
+    /**
+     * @return the length of the content published so far
+     */
+    @Override
+    public int length() {
+        return (int) (published.get() & LENGTH_MASK);
+    }
+
+    /**
+     * Provides the char at the given index of the published content. Repeated access is better done
+     * through a {@link #snapshot()}, which caches the chunk last accessed.
+     */
+    @Override
+    public char charAt(int index) {
+        final long state = published.get();
+        final int length = (int) (state & LENGTH_MASK);
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not within length " + length);
+        }
+        final int slot = slotContaining((int) (state >>> 32), index);
+        return chunkAt(slot).charAt(index - offsetAt(slot));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return snapshot().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * @return an immutable view of the content published so far, which is unaffected by later appends
+     */
+    public Snapshot snapshot() {
+        final long state = published.get();
+        return new Snapshot((int) (state >>> 32), 0, (int) (state & LENGTH_MASK));
+    }
+
+    /**
+     * Moves the published watermark past each slot that is published in order. Every appender helps, so
+     * whichever publishes the last slot of a gap moves it past the slots published after the gap.
+     */
+    private void advancePublished() {
+        while (true) {
+            final long state = published.get();
+            final int slot = (int) (state >>> 32);
+            final Segment segment = segments.get(segmentOf(slot));
+            if (segment == null) {
+                return;
+            }
+            final CharSequence chunk = segment.chunks.get(indexInSegment(slot));
+            if (chunk == null) {
+                return;
+            }
+            final long length = segment.offsets[indexInSegment(slot)] + chunk.length();
+            published.compareAndSet(state, ((long) (slot + 1) << 32) | length);
+        }
+    }
+
+    private Segment segmentFor(int slot) {
+        final int segmentIndex = segmentOf(slot);
+        Segment segment = segments.get(segmentIndex);
+        if (segment == null) {
+            final Segment created = new Segment(FIRST_SEGMENT_SIZE << segmentIndex);
+            if (segments.compareAndSet(segmentIndex, null, created)) {
+                segment = created;
+            }
+            else {
+                segment = segments.get(segmentIndex);
+            }
+        }
+        return segment;
+    }
+
+    private static int segmentOf(int slot) {
+        return 31 - Integer.numberOfLeadingZeros(slot + FIRST_SEGMENT_SIZE) - FIRST_SEGMENT_BITS;
+    }
+
+    private static int indexInSegment(int slot) {
+        return slot + FIRST_SEGMENT_SIZE - (FIRST_SEGMENT_SIZE << segmentOf(slot));
+    }
+
+    // only valid for published slots
+
+    private CharSequence chunkAt(int slot) {
+        return segments.get(segmentOf(slot)).chunks.get(indexInSegment(slot));
+    }
+
+    private int offsetAt(int slot) {
+        return segments.get(segmentOf(slot)).offsets[indexInSegment(slot)];
+    }
+
+    /**
+     * @return the published slot containing the given index, found by binary search of the offsets
+     */
+    private int slotContaining(int slots, int index) {
+        int low = 0;
+        int high = slots - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (offsetAt(mid) <= index) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static class Segment {
+        // written before the corresponding chunk is published
+        final int[] offsets;
+        final AtomicReferenceArray<CharSequence> chunks;
+
+        Segment(int size) {
+            offsets = new int[size];
+            chunks = new AtomicReferenceArray<>(size);
+        }
+    }
+
+    /**
+     * An immutable view of a range of the content published at the time it was created.
+     */
+    public class Snapshot implements CharSequence {
+        private final int slots;
+        private final int start;
+        private final int length;
+
+        // used to optimize repeated, sequential calls to charAt
+        private int cachedSlot;
+
+        Snapshot(int slots, int start, int length) {
+            this.slots = slots;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " is not within length " + length);
+            }
+            final int position = start + index;
+            int slot = cachedSlot;
+            CharSequence chunk = chunkAt(slot);
+            int offset = offsetAt(slot);
+            if (position < offset || position >= offset + chunk.length()) {
+                slot = slotContaining(slots, position);
+                cachedSlot = slot;
+                chunk = chunkAt(slot);
+                offset = offsetAt(slot);
+            }
+            return chunk.charAt(position - offset);
+        }
+
+        @Override
+        public Snapshot subSequence(int subStart, int subEnd) {
+            if (subStart < 0 || subEnd > length || subStart > subEnd) {
+                throw new IndexOutOfBoundsException("Range " + subStart + "-" + subEnd + " is not within length " + length);
+            }
+            return new Snapshot(slots, start + subStart, subEnd - subStart);
+        }
+
+        /**
+         * Copies chars into the given array in the manner of {@link String#getChars(int, int, char[], int)}.
+         */
+        public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+            if (srcBegin < 0 || srcEnd > length || srcBegin > srcEnd) {
+                throw new IndexOutOfBoundsException("Range " + srcBegin + "-" + srcEnd + " is not within length " + length);
+            }
+            if (srcBegin == srcEnd) {
+                return;
+            }
+            final int from = start + srcBegin;
+            final int to = start + srcEnd;
+            for (int slot = slotContaining(slots, from); slot < slots; ++slot) {
+                final int offset = offsetAt(slot);
+                if (offset >= to) {
+                    break;
+                }
+                final CharSequence chunk = chunkAt(slot);
+                final int chunkFrom = Math.max(from, offset) - offset;
+                final int chunkTo = Math.min(to, offset + chunk.length()) - offset;
+                CharSequences.copyChars(chunk, chunkFrom, chunkTo, dst, dstBegin + offset + chunkFrom - from);
+            }
+        }
+
+        @Override
+        public String toString() {
+            final char[] chars = new char[length];
+            getChars(0, length, chars, 0);
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package me.itzg.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chunk of ISO-8859-1 content stored as one byte per char, which is typically a region of a slab
+ * shared with other chunks.
+ */
+final class Latin1Chunk implements CharSequence {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    Latin1Chunk(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not within length " + length);
+        }
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " is not within length " + length);
+        }
+        return new Latin1Chunk(bytes, offset + start, end - start);
+    }
+
+    void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        for (int i = offset + srcBegin, end = offset + srcEnd; i < end; ++i) {
+            dst[dstBegin++] = (char) (bytes[i] & 0xff);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -6,8 +6,10 @@ import java.nio.ByteBuffer;
  * Since ByteBuffers themselves derive their hashCode based on content, this wrapper instead uses the
  * buffer object's instance as the hash/equality for {@link java.util.Map#put(Object, Object)} usage.
  */
-class ByteBufferInstance {
+public class ByteBufferInstance {
     final ByteBuffer buffer;
+    // until first borrowed from a pool, so that a borrow can tell whether the pool had to create it
+    boolean unborrowed = true;
 
     ByteBufferInstance(ByteBuffer buffer) {
         this.buffer = buffer;
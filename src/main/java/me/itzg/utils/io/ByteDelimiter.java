@@ -0,0 +1,260 @@
+package me.itzg.utils.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Locates an encoded line delimiter, or any of several alternatives, directly within raw bytes, which
+ * avoids the need to decode content just to find where the lines are.
+ * <p>Where alternatives overlap, the one starting earliest wins and then the longest of those starting
+ * at the same place.</p>
+ */
+class ByteDelimiter {
+    private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    // longest first so that the longest alternative matching at a position wins
+    private final byte[][] alternatives;
+
+    // each distinct first byte of the alternatives repeated in each byte of a long
+    private final long[] firstBytePatterns;
+    private final boolean[] isFirstByte = new boolean[256];
+    private final boolean[] isLastByte = new boolean[256];
+
+    private final int maxLength;
+    private final boolean selfOverlapping;
+
+    ByteDelimiter(byte[]... alternatives) {
+        if (alternatives.length == 0) {
+            throw new IllegalArgumentException("At least one delimiter is required");
+        }
+        this.alternatives = alternatives.clone();
+        Arrays.sort(this.alternatives, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] o1, byte[] o2) {
+                return o2.length - o1.length;
+            }
+        });
+        if (this.alternatives[this.alternatives.length - 1].length == 0) {
+            throw new IllegalArgumentException("delimiter cannot be empty");
+        }
+        maxLength = this.alternatives[0].length;
+
+        long[] patterns = new long[alternatives.length];
+        int distinct = 0;
+        for (byte[] alternative : alternatives) {
+            isLastByte[alternative[alternative.length - 1] & 0xff] = true;
+            final int first = alternative[0] & 0xff;
+            if (!isFirstByte[first]) {
+                isFirstByte[first] = true;
+                patterns[distinct++] = first * 0x0101010101010101L;
+            }
+        }
+        firstBytePatterns = Arrays.copyOf(patterns, distinct);
+        selfOverlapping = anyOverlaps(this.alternatives);
+    }
+
+    /**
+     * @return true if an alternative can occur starting within another and end somewhere other than where
+     * that one ends, such as <code>"aa"</code> within <code>"aaa"</code>
+     */
+    private static boolean anyOverlaps(byte[][] alternatives) {
+        for (byte[] outer : alternatives) {
+            for (byte[] inner : alternatives) {
+                for (int offset = 1; offset < outer.length; ++offset) {
+                    if (offset + inner.length == outer.length) {
+                        // ends along with the outer one, so it locates the same line start
+                        continue;
+                    }
+                    final int overlap = Math.min(outer.length - offset, inner.length);
+                    boolean matches = true;
+                    for (int i = 0; i < overlap && matches; ++i) {
+                        matches = outer[offset + i] == inner[i];
+                    }
+                    if (matches) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    static ByteDelimiter encode(String[] delimiters, Charset charset) {
+        final byte[][] alternatives = new byte[delimiters.length][];
+        for (int i = 0; i < delimiters.length; ++i) {
+            try {
+                ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(delimiters[i]));
+                alternatives[i] = new byte[encoded.remaining()];
+                encoded.get(alternatives[i]);
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException("Delimiter cannot be encoded with " + charset, e);
+            }
+        }
+        return new ByteDelimiter(alternatives);
+    }
+
+    static ByteDelimiter encode(String delimiter, Charset charset) {
+        return encode(new String[]{delimiter}, charset);
+    }
+
+    /**
+     * @return the length of the longest alternative
+     */
+    int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return true if searching from somewhere other than a line start may locate a different delimiter
+     * than a scan from the preceding line start would, in which case the start of the line containing an
+     * arbitrary offset cannot be found by searching around that offset alone
+     */
+    boolean isSelfOverlapping() {
+        return selfOverlapping;
+    }
+
+    /**
+     * @param buffer the buffer to search, which is accessed with absolute indices only
+     * @param from the index at which to start searching
+     * @param limit the index just past the last byte to consider
+     * @return the index of the start of the first delimiter found or -1 if no complete delimiter
+     * was found before the limit
+     */
+    int indexIn(ByteBuffer buffer, int from, int limit) {
+        int i = from;
+        while (i < limit) {
+            i = indexOfFirstByte(buffer, i, limit);
+            if (i == -1) {
+                return -1;
+            }
+            if (matchLengthAt(buffer, i, limit) != 0) {
+                return i;
+            }
+            ++i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param index a position previously returned by {@link #indexIn(java.nio.ByteBuffer, int, int)}
+     * @return the length of the delimiter found at that position
+     */
+    int matchLengthAt(ByteBuffer buffer, int index) {
+        return matchLengthAt(buffer, index, buffer.limit());
+    }
+
+    /**
+     * Determines whether a delimiter found near the limit of what has been read so far could turn out to
+     * be the start of a longer alternative, such as <code>"\r"</code> of <code>"\r\n"</code>, in which
+     * case it should only be accepted once more content has been read or there is no more.
+     *
+     * @param index a position previously returned by {@link #indexIn(java.nio.ByteBuffer, int, int)}
+     * @param limit the index just past the content read so far
+     * @param matchedLength the length of the delimiter found at that position
+     * @return true if a longer alternative matches all of the content from the position to the limit
+     */
+    boolean mayExtend(ByteBuffer buffer, int index, int limit, int matchedLength) {
+        if (index + maxLength <= limit) {
+            // any longer alternative would already have been matched
+            return false;
+        }
+        for (byte[] alternative : alternatives) {
+            if (alternative.length <= matchedLength) {
+                break;
+            }
+            if (index + alternative.length > limit && prefixMatchesAt(alternative, buffer, index, limit - index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the length of the longest delimiter that ends exactly at <code>end</code> without starting
+     * before <code>start</code> or zero if none
+     */
+    int suffixLength(ByteBuffer buffer, int start, int end) {
+        for (byte[] alternative : alternatives) {
+            final int index = end - alternative.length;
+            if (index >= start && matchesAt(alternative, buffer, index)) {
+                return alternative.length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Searches backward for the delimiter that ends last.
+     *
+     * @param buffer the buffer to search, which is accessed with absolute indices only
+     * @param start the index before which no part of a delimiter may start
+     * @param end the index just past the last byte to consider
+     * @return the index just past the last delimiter found or -1 if there is none. Its length is given by
+     * {@link #suffixLength(java.nio.ByteBuffer, int, int)}
+     */
+    int lastEndIn(ByteBuffer buffer, int start, int end) {
+        for (int i = end; i > start; --i) {
+            if (isLastByte[buffer.get(i - 1) & 0xff] && suffixLength(buffer, start, i) != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int matchLengthAt(ByteBuffer buffer, int index, int limit) {
+        for (byte[] alternative : alternatives) {
+            if (index + alternative.length <= limit && matchesAt(alternative, buffer, index)) {
+                return alternative.length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the first byte of any alternative eight bytes at a time by treating each long read from the
+     * buffer as a vector of bytes (SWAR), so that the common case of a long run of non-delimiter
+     * content costs one comparison per word rather than per byte.
+     */
+    private int indexOfFirstByte(ByteBuffer buffer, int from, int limit) {
+        final long[] patterns = firstBytePatterns;
+        final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        for (; i + 8 <= limit; i += 8) {
+            final long word = buffer.getLong(i);
+            long zeroes = 0;
+            for (long pattern : patterns) {
+                final long x = word ^ pattern;
+                // sets the high bit of exactly those bytes that were zero, i.e. matched the pattern
+                zeroes |= ~(((x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | x | LOW_SEVEN_BITS);
+            }
+            if (zeroes != 0) {
+                return i + ((bigEndian ? Long.numberOfLeadingZeros(zeroes) : Long.numberOfTrailingZeros(zeroes))
+                        >>> 3);
+            }
+        }
+        for (; i < limit; ++i) {
+            if (isFirstByte[buffer.get(i) & 0xff]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(byte[] alternative, ByteBuffer buffer, int index) {
+        return prefixMatchesAt(alternative, buffer, index, alternative.length);
+    }
+
+    private static boolean prefixMatchesAt(byte[] alternative, ByteBuffer buffer, int index, int length) {
+        for (int j = 0; j < length; ++j) {
+            if (buffer.get(index + j) != alternative[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
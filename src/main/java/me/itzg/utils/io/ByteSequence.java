@@ -0,0 +1,179 @@
+package me.itzg.utils.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link java.lang.CharSequence} view over a region of a {@link java.nio.ByteBuffer}. When the charset
+ * maps every byte to exactly one char (ISO-8859-1 and US-ASCII) the characters are read directly from the
+ * bytes; any other charset is decoded once, on first access.
+ * <p>The view does not copy the bytes, so it is only valid for as long as the underlying buffer content
+ * remains unchanged. Use {@link #toString()} to retain the content.</p>
+ * <p>A scanner may also re-point a single instance at each successive line, in which case the decoding
+ * resources are reused too and the view must not be retained beyond the observer callback.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class ByteSequence implements CharSequence {
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+    private final Charset charset;
+    private final boolean singleByte;
+
+    // only used for multi-byte charsets and reused across resets
+    private ByteBuffer decodeView;
+    private CharsetDecoder decoder;
+    private CharBuffer decoded;
+    private boolean decodedValid;
+
+    /**
+     * @param buffer the buffer to view, which is accessed with absolute indices only
+     * @param start the index of the first byte in the buffer
+     * @param end the index after the last byte in the buffer
+     * @param charset the charset used to interpret the bytes
+     */
+    public ByteSequence(ByteBuffer buffer, int start, int end, Charset charset) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+        this.charset = charset;
+        this.singleByte = isSingleByte(charset);
+    }
+
+    /**
+     * Creates an instance that isn't yet viewing anything, for use with {@link #reset(java.nio.ByteBuffer, int, int)}
+     */
+    ByteSequence(Charset charset) {
+        this(null, 0, 0, charset);
+    }
+
+    /**
+     * Re-points this view at another region without allocating.
+     */
+    ByteSequence reset(ByteBuffer buffer, int start, int end) {
+        if (buffer != this.buffer) {
+            this.buffer = buffer;
+            decodeView = null;
+        }
+        this.start = start;
+        this.end = end;
+        decodedValid = false;
+        return this;
+    }
+
+    static boolean isSingleByte(Charset charset) {
+        return charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the number of bytes viewed, which may differ from {@link #length()} for multi-byte charsets
+     */
+    public int byteLength() {
+        return end - start;
+    }
+
+    /**
+     * Copies the viewed bytes into the given array.
+     * @param dst the destination array
+     * @param dstBegin the index in the destination at which to place the first byte
+     */
+    public void getBytes(byte[] dst, int dstBegin) {
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + start, dst, dstBegin, end - start);
+        }
+        else {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(end).position(start);
+            view.get(dst, dstBegin, end - start);
+        }
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public int length() {
+        return singleByte ? end - start : decoded().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (singleByte) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("index " + index + " is outside of 0.." + (end - start));
+            }
+            byte b = buffer.get(start + index);
+            if (b < 0 && charset.equals(StandardCharsets.US_ASCII)) {
+                return '\uFFFD';
+            }
+            return (char) (b & 0xff);
+        }
+        else {
+            return decoded().charAt(index);
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (singleByte) {
+            if (start < 0 || end > this.end - this.start || start > end) {
+                throw new IndexOutOfBoundsException("sub-sequence " + start + ".." + end + " is out of bounds");
+            }
+            return new ByteSequence(buffer, this.start + start, this.start + end, charset);
+        }
+        else {
+            return decoded().subSequence(start, end);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (singleByte) {
+            if (buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + start, end - start, charset);
+            }
+            byte[] bytes = new byte[end - start];
+            getBytes(bytes, 0);
+            return new String(bytes, charset);
+        }
+        else {
+            return decoded().toString();
+        }
+    }
+
+    private CharBuffer decoded() {
+        if (!decodedValid) {
+            if (decoder == null) {
+                decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            if (decodeView == null) {
+                decodeView = buffer.duplicate();
+            }
+            decodeView.limit(end).position(start);
+
+            final int maxChars = (int) Math.ceil((end - start) * (double) decoder.maxCharsPerByte());
+            if (decoded == null || decoded.capacity() < maxChars) {
+                decoded = CharBuffer.allocate(maxChars);
+            }
+            else {
+                decoded.clear();
+            }
+
+            decoder.reset();
+            decoder.decode(decodeView, decoded, true);
+            decoder.flush(decoded);
+            decoded.flip();
+            decodedValid = true;
+        }
+        return decoded;
+    }
+}
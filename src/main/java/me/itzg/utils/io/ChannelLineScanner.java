@@ -8,13 +8,33 @@ import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
-import java.util.LinkedList;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provides an efficient traversal of a file line-by-line with the extra benefit that it will tell the
@@ -24,15 +44,34 @@ import java.util.LinkedList;
  * @since  1.0
  */
 public class ChannelLineScanner {
+    private static final int INITIAL_BATCH_CAPACITY = 64;
 
     private int bufferSize = 1024;
 
+    private int mappedWindowSize = 64 * 1024 * 1024;
+
+    private long parallelSplitSize = 32 * 1024 * 1024;
+
     private Charset charset = StandardCharsets.ISO_8859_1;
 
-    private char[] delimiter = new char[]{'\n'};
+    private String[] delimiters = new String[]{"\n"};
+
+    private DelimiterMatcher delimiterMatcher = new DelimiterMatcher(delimiters);
+
+    private boolean lazyDecoding;
 
     private ObjectPool<ByteBufferInstance> bufferPool;
 
+    private int readAheadDepth;
+
+    private long gzipCheckpointInterval = 1024 * 1024;
+
+    private Executor readAheadExecutor;
+
+    private String[] lineFilter;
+
+    private ScanMetrics metrics;
+
     @UsedExternally
     public int getBufferSize() {
         return bufferSize;
@@ -42,13 +81,48 @@ public class ChannelLineScanner {
         this.bufferSize = bufferSize;
     }
 
+    @UsedExternally
+    public int getMappedWindowSize() {
+        return mappedWindowSize;
+    }
+
+    /**
+     * @param mappedWindowSize the number of bytes mapped at a time by
+     *                         {@link #scanMapped(java.nio.channels.FileChannel, Observer)}. A window is
+     *                         temporarily enlarged to contain a longer line.
+     */
+    public void setMappedWindowSize(int mappedWindowSize) {
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
     public void setDelimiter(String delimiterSequence) {
-        delimiter = delimiterSequence.toCharArray();
+        setDelimiters(delimiterSequence);
     }
 
+    /**
+     * @return the delimiter or the first of the alternatives given to {@link #setDelimiters(String...)}
+     */
     @UsedExternally
     public String getDelimiter() {
-        return new String(delimiter);
+        return delimiters[0];
+    }
+
+    /**
+     * Allows for any of several delimiters to end a line, such as <code>"\n"</code> and <code>"\r\n"</code>
+     * for content from mixed platforms. All of the alternatives are searched for in a single pass and
+     * where they overlap in the content the longest one wins, so the line never includes part of a
+     * delimiter.
+     *
+     * @param alternatives one or more delimiters
+     */
+    public void setDelimiters(String... alternatives) {
+        delimiterMatcher = new DelimiterMatcher(alternatives);
+        delimiters = alternatives.clone();
+    }
+
+    @UsedExternally
+    public String[] getDelimiters() {
+        return delimiters.clone();
     }
 
     public void initDefaultBufferPool() {
@@ -71,90 +145,952 @@ public class ChannelLineScanner {
         bufferPool = new GenericObjectPool<ByteBufferInstance>(bufferFactory);
     }
 
+    /**
+     * Switches to a {@link DirectBufferPool} of this scanner's buffer size, which avoids the copy between
+     * the channel and a heap buffer and scales better across many concurrent scans.
+     *
+     * @return the pool, which can also be shared with other scanners via
+     * {@link #setDirectBufferPool(DirectBufferPool)}
+     */
+    public DirectBufferPool initDirectBufferPool() {
+        final DirectBufferPool pool = new DirectBufferPool(bufferSize);
+        bufferPool = pool;
+        return pool;
+    }
+
+    /**
+     * @param pool a pool to share with other scanners, whose buffer size takes precedence over
+     *             {@link #getBufferSize()}
+     */
+    public void setDirectBufferPool(DirectBufferPool pool) {
+        bufferPool = pool;
+    }
+
     public void scan(ReadableByteChannel channel, Observer observer) throws IOException {
+        scanFrom(channel, 0, observer, true);
+    }
+
+    /**
+     * Scans just the lines that start within a byte range of the channel, so that workers can each scan a
+     * disjoint slice of one file without overlap or coordination. As with Hadoop's input splits, a range
+     * starting mid-line skips forward to the next line and the line crossing the end of the range is
+     * scanned to its end, since it belongs to the range where it starts.
+     *
+     * @param channel the channel to scan, whose position is moved to the first line of the range
+     * @param start the offset of the start of the range
+     * @param end the offset just past the end of the range, which may exceed the size of the channel
+     * @param observer receives the lines and their exact byte offsets. Its {@link Observer#observeEndOfFile(long)}
+     *                 is invoked with the offset where the following range's first line starts, or the size
+     *                 of the channel, unless it stopped the scan early.
+     * @throws IllegalStateException if the range starts past zero and the charset and delimiters do not
+     * allow lines to be located by their bytes, which requires ISO-8859-1, US-ASCII or UTF-8 and ASCII
+     * delimiters that cannot overlap themselves in the way <code>"aa"</code> does
+     */
+    public void scan(SeekableByteChannel channel, long start, long end, Observer observer) throws IOException {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range from " + start + " to " + end);
+        }
+        long lineStart = 0;
+        if (start > 0) {
+            if (!isByteScannable()) {
+                throw new IllegalStateException("Ranges require ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters");
+            }
+            final ByteDelimiter byteDelimiter = ByteDelimiter.encode(delimiters, charset);
+            if (byteDelimiter.isSelfOverlapping()) {
+                throw new IllegalStateException("Ranges require delimiters that cannot overlap themselves");
+            }
+            lineStart = findLineStart(channel, byteDelimiter, start, channel.size());
+        }
+        if (lineStart >= end) {
+            observer.observeEndOfFile(lineStart);
+            return;
+        }
+
+        channel.position(lineStart);
+        final RangeObserver rangeObserver = new RangeObserver(observer, end);
+        scanFrom(channel, lineStart, rangeObserver, true);
+        if (rangeObserver.nextRangeStart != -1) {
+            observer.observeEndOfFile(rangeObserver.nextRangeStart);
+        }
+    }
+
+    /**
+     * Scans from the channel's current position, which is assumed to be the start of a line.
+     *
+     * @param startPosition the byte position in the file of the channel's current position
+     * @param includePartialLastLine if false, content after the last delimiter is not given to the observer
+     *                               since it is presumed to be a line still being written
+     * @return the position just past the last line given to the observer, which is where a subsequent
+     * scan would resume
+     */
+    long scanFrom(ReadableByteChannel channel, long startPosition, Observer observer,
+                  boolean includePartialLastLine) throws IOException {
         if (bufferPool == null) {
             initDefaultBufferPool();
         }
 
-        LinkedList<ByteBufferInstance> buffers = allocateBuffers(2);
+        final ReadAheadChannel readAhead = startReadAhead(channel);
+        final ScanMeter meter = metrics != null ? new ScanMeter(readAhead != null ? readAhead : channel) : null;
+        try {
+            final ReadableByteChannel source = meter != null ? meter : readAhead != null ? readAhead : channel;
+            final Observer target = meter != null ? meter.observing(observer) : observer;
+            final LineFilter filter = createLineFilter();
+            if (filter != null || (lazyDecoding && isByteScannable())) {
+                return scanBytes(source, startPosition, target, includePartialLastLine, filter, meter);
+            }
+            return scanDecoding(source, startPosition, target, includePartialLastLine, meter);
+        } finally {
+            if (readAhead != null) {
+                readAhead.close();
+            }
+            if (meter != null) {
+                meter.report(metrics);
+            }
+        }
+    }
+
+    /**
+     * @return a channel reading ahead of the scan or null if read-ahead is not enabled
+     */
+    private ReadAheadChannel startReadAhead(ReadableByteChannel channel) {
+        if (readAheadDepth <= 0) {
+            return null;
+        }
+        final DirectBufferPool directPool = bufferPool instanceof DirectBufferPool ?
+                (DirectBufferPool) bufferPool : null;
+        return ReadAheadChannel.start(channel, readAheadDepth,
+                directPool != null ? directPool.getBufferSize() : bufferSize, directPool, readAheadExecutor);
+    }
+
+    /**
+     * Decodes the content as it is read and locates the delimiters amongst the decoded chars.
+     */
+    private long scanDecoding(ReadableByteChannel channel, long startPosition, Observer observer,
+                              boolean includePartialLastLine, ScanMeter meter) throws IOException {
+        // a single decoder is used for the whole scan, so multi-byte chars can straddle buffer fills
+        final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        final EncodedLengthCounter encodedLength = new EncodedLengthCounter(charset);
 
+        final ByteBufferInstance bufferInstance = allocateBuffer();
         try {
-            int amountRead;
+            final ByteBuffer in = bufferInstance.getBuffer();
+            final int charsPerFill = (int) Math.ceil(in.capacity() * (double) decoder.maxCharsPerByte()) + 1;
             long totalAmountRead = 0;
-            ByteBuffer remainder = null;
+            // the byte position of the start of the line being scanned
+            long linePosition = startPosition;
+            long totalBytesDecoded = 0;
+            boolean leadingBytesResolved = false;
+            // each fill is decoded after the partial line left by the previous one, so that the partial
+            // line is only copied when it is moved to a larger buffer. The chars already given out as lines
+            // are never overwritten, since they remain valid after the callback.
+            CharBuffer chars = CharBuffer.allocate(charsPerFill * 4);
+            int lineStart = 0;
+            // the chars decoded so far, all of which have been consumed by the matcher
+            int decoded = 0;
+            // the matcher state is carried across refills along with the partial line
+            int matchState = DelimiterMatcher.INITIAL_STATE;
+            // a delimiter found but not yet accepted, since a longer alternative starting at the same
+            // place, or an earlier one, could still complete
+            int pendingStart = -1;
+            int pendingEnd = -1;
+            boolean endOfInput = false;
 
-            while ((amountRead = channel.read(buffers.getFirst().getBuffer())) != -1) {
-                if (amountRead > 0) {
-                    long bufferPositionInFile = totalAmountRead -
-                            (remainder != null ? remainder.remaining() : 0);
+            while (!endOfInput) {
+                final int amountRead = channel.read(in);
+                if (amountRead == -1) {
+                    endOfInput = true;
+                }
+                else {
                     totalAmountRead += amountRead;
-                    int previousNewLinePos = 0;
+                }
+                in.flip();
 
-                    ByteBuffer activeBuffer = buffers.getFirst().getBuffer();
-                    activeBuffer.flip();
-                    CharBuffer charBuffer = null;
-                    charBuffer = getCharset().newDecoder().decode(activeBuffer);
+                final int bytesToDecode = in.remaining();
+                final int needed = (int) Math.ceil(bytesToDecode * (double) decoder.maxCharsPerByte()) + 1;
+                if (chars.capacity() - decoded < needed) {
+                    // move the partial line to a new buffer with at least as much room again, so that the
+                    // copying of a long line stays proportional to its length
+                    final int carried = decoded - lineStart;
+                    if (meter != null) {
+                        meter.carriedOver += encodedLength.of(chars, lineStart, decoded);
+                    }
+                    final CharBuffer moved = CharBuffer.allocate(Math.max(charsPerFill * 4, carried * 2 + needed));
+                    chars.limit(decoded).position(lineStart);
+                    moved.put(chars);
+                    encodedLength.shift(lineStart);
+                    chars = moved;
+                    decoded = carried;
+                    if (pendingStart != -1) {
+                        pendingStart -= lineStart;
+                        pendingEnd -= lineStart;
+                    }
+                    lineStart = 0;
+                }
 
-                    while (charBuffer.hasRemaining()) {
-                        int newLinePos = scanForNewLine(charBuffer);
+                chars.limit(chars.capacity()).position(decoded);
+                decode(decoder, in, chars, endOfInput, encodedLength);
+                totalBytesDecoded += bytesToDecode - in.remaining();
+                final int fillEnd = chars.position();
+                // any trailing bytes of an incomplete char are kept for the next fill
+                in.compact();
 
-                        if (newLinePos != -1) {
-                            CharBuffer line = charBuffer.duplicate();
+                if (!leadingBytesResolved && fillEnd > 0) {
+                    // account for bytes, such as a byte order mark, that were consumed without producing chars
+                    linePosition = startPosition + totalBytesDecoded - encodedLength.of(chars, 0, fillEnd);
+                    leadingBytesResolved = true;
+                }
 
-                            line.position(previousNewLinePos)
-                                    .limit(newLinePos);
+                // a delimiter still pending at the end is accepted as is, unless the content may yet grow
+                final boolean resolveAtEnd = endOfInput && includePartialLastLine;
+                int i = decoded;
+                while (true) {
+                    if (i < fillEnd) {
+                        matchState = delimiterMatcher.step(matchState, chars.get(i++));
+                        final int matchLength = delimiterMatcher.matchLength(matchState);
+                        // the longest delimiter ending here is also the one starting earliest
+                        if (matchLength > 0 && (pendingStart == -1 || i - matchLength <= pendingStart)) {
+                            pendingStart = i - matchLength;
+                            pendingEnd = i;
+                        }
+                        if (pendingStart == -1 || delimiterMatcher.canExtend(matchState, i - pendingStart)) {
+                            continue;
+                        }
+                    }
+                    else if (pendingStart == -1 || !resolveAtEnd) {
+                        break;
+                    }
 
-                            if (!observer.observeLine(line, bufferPositionInFile + previousNewLinePos)) {
-                                return;
-                            }
+                    final CharBuffer line = chars.duplicate();
+                    line.limit(pendingStart).position(lineStart);
+
+                    final long lineStartPosition = linePosition;
+                    // advance by the bytes of the line and delimiter
+                    linePosition += encodedLength.of(chars, lineStart, pendingEnd);
+                    lineStart = pendingEnd;
+                    // anything matched beyond the delimiter is matched again from a clean state
+                    i = pendingEnd;
+                    pendingStart = -1;
+                    matchState = DelimiterMatcher.INITIAL_STATE;
+
+                    if (!observer.observeLine(line, lineStartPosition)) {
+                        return linePosition;
+                    }
+                }
+                decoded = fillEnd;
+            }
+
+            final long endPosition = startPosition + totalAmountRead;
+            // and check for a remaining line if file didn't end with line delimiter
+            if (includePartialLastLine && decoded > lineStart) {
+                final CharBuffer line = chars.duplicate();
+                line.limit(decoded).position(lineStart);
+                if (!observer.observeLine(line, linePosition)) {
+                    return endPosition;
+                }
+                linePosition = endPosition;
+            }
+            observer.observeEndOfFile(endPosition);
+            return linePosition;
+        } finally {
+            deallocateBuffer(bufferInstance);
+        }
+    }
+
+    private static void decode(CharsetDecoder decoder, ByteBuffer in, CharBuffer out, boolean endOfInput,
+                               EncodedLengthCounter encodedLength) throws IOException {
+        final String replacement = decoder.replacement();
+        final int replacementLength = encodedLength.of(CharBuffer.wrap(replacement), 0, replacement.length());
+
+        while (true) {
+            final CoderResult result = decoder.decode(in, out, endOfInput);
+            if (result.isUnderflow()) {
+                break;
+            }
+            if (result.isOverflow()) {
+                throw new IOException("Decoded content overflowed its estimated size");
+            }
+            // malformed or unmappable
+            in.position(in.position() + result.length());
+            encodedLength.correct(out.position(), result.length() - replacementLength);
+            out.put(replacement);
+        }
+        if (endOfInput) {
+            decoder.flush(out);
+        }
+    }
+
+    /**
+     * Locates the delimiters directly within the raw bytes read from the channel and hands each line to
+     * the observer via a single, reused {@link ByteSequence} that only decodes if it is read. Nothing is
+     * allocated per line or per buffer fill.
+     */
+    private long scanBytes(ReadableByteChannel channel, long startPosition, Observer observer,
+                           boolean includePartialLastLine, LineFilter filter, ScanMeter meter) throws IOException {
+        final ByteDelimiter byteDelimiter = ByteDelimiter.encode(delimiters, charset);
+        final ByteSequence line = new ByteSequence(charset);
+
+        final CarryOverBuffer carryOverBuffer = new CarryOverBuffer();
+        try {
+            long bufferPositionInFile = startPosition;
+            // the carried-over bytes that have already been searched for a delimiter
+            int searchFrom = 0;
+
+            ByteBuffer buffer = carryOverBuffer.buffer();
+            while (true) {
+                final boolean endOfInput = channel.read(buffer) == -1;
+                buffer.flip();
+                final int limit = buffer.limit();
+                // a delimiter at the limit is accepted as is, unless the content may yet grow
+                final boolean resolveAtLimit = endOfInput && includePartialLastLine;
+
+                int lineStart = 0;
+                int delimiterPos;
+                while ((delimiterPos = byteDelimiter.indexIn(buffer, searchFrom, limit)) != -1) {
+                    final int delimiterLength = byteDelimiter.matchLengthAt(buffer, delimiterPos);
+                    if (!resolveAtLimit && byteDelimiter.mayExtend(buffer, delimiterPos, limit, delimiterLength)) {
+                        // a longer alternative may complete with the next fill
+                        break;
+                    }
+                    final int nextLineStart = delimiterPos + delimiterLength;
+                    if ((filter == null || filter.matches(buffer, lineStart, delimiterPos))
+                            && !observer.observeLine(retainable(line.reset(buffer, lineStart, delimiterPos)),
+                            bufferPositionInFile + lineStart)) {
+                        return bufferPositionInFile + nextLineStart;
+                    }
+                    lineStart = nextLineStart;
+                    searchFrom = lineStart;
+                }
+
+                if (endOfInput) {
+                    // and check for a remaining line if file didn't end with line delimiter
+                    final long endPosition = bufferPositionInFile + limit;
+                    if (includePartialLastLine && limit > lineStart) {
+                        if ((filter == null || filter.matches(buffer, lineStart, limit))
+                                && !observer.observeLine(retainable(line.reset(buffer, lineStart, limit)),
+                                bufferPositionInFile + lineStart)) {
+                            return endPosition;
+                        }
+                        lineStart = limit;
+                    }
+                    observer.observeEndOfFile(endPosition);
+                    return bufferPositionInFile + lineStart;
+                }
+
+                // a partial delimiter may be at the end, so only skip what definitely can't start one
+                searchFrom = Math.max(0, limit - lineStart - byteDelimiter.maxLength() + 1);
+                bufferPositionInFile += lineStart;
+                buffer = carryOverBuffer.carryOver(lineStart);
+            }
+        } finally {
+            carryOverBuffer.release();
+            if (meter != null) {
+                meter.carriedOver += carryOverBuffer.carriedOver;
+            }
+        }
+    }
+
+    /**
+     * Scans the channel in the same manner as {@link #scan(java.nio.channels.ReadableByteChannel, Observer)}
+     * with lazy decoding, but hands the observer all of the lines located in each buffer fill at once as
+     * primitive arrays of where they are in the buffer. Nothing is allocated per line, per batch or per
+     * buffer fill, and the observer can process the lines in a tight loop.
+     *
+     * @throws IllegalStateException if the charset and delimiters do not allow lines to be located by
+     * their bytes, which requires ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters
+     */
+    public void scanBatches(ReadableByteChannel channel, BatchObserver observer) throws IOException {
+        scanBatchesFrom(channel, 0, observer, true);
+    }
+
+    /**
+     * The batch equivalent of {@link #scanFrom(java.nio.channels.ReadableByteChannel, long, Observer, boolean)}
+     */
+    long scanBatchesFrom(ReadableByteChannel channel, long startPosition, BatchObserver observer,
+                         boolean includePartialLastLine) throws IOException {
+        if (!isByteScannable()) {
+            throw new IllegalStateException("Batches require ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters");
+        }
+        if (bufferPool == null) {
+            initDefaultBufferPool();
+        }
+
+        final ReadAheadChannel readAhead = startReadAhead(channel);
+        final ScanMeter meter = metrics != null ? new ScanMeter(readAhead != null ? readAhead : channel) : null;
+        try {
+            return scanBatchesDirectly(meter != null ? meter : readAhead != null ? readAhead : channel,
+                    startPosition, meter != null ? meter.observing(observer) : observer, includePartialLastLine,
+                    createLineFilter(), meter);
+        } finally {
+            if (readAhead != null) {
+                readAhead.close();
+            }
+            if (meter != null) {
+                meter.report(metrics);
+            }
+        }
+    }
+
+    private long scanBatchesDirectly(ReadableByteChannel channel, long startPosition, BatchObserver observer,
+                                     boolean includePartialLastLine, LineFilter filter, ScanMeter meter)
+            throws IOException {
+        final ByteDelimiter byteDelimiter = ByteDelimiter.encode(delimiters, charset);
+        int[] starts = new int[INITIAL_BATCH_CAPACITY];
+        int[] ends = new int[INITIAL_BATCH_CAPACITY];
 
-                            // grab position AFTER the delimiter
-                            previousNewLinePos = charBuffer.position();
+        final CarryOverBuffer carryOverBuffer = new CarryOverBuffer();
+        try {
+            long bufferPositionInFile = startPosition;
+            // the carried-over bytes that have already been searched for a delimiter
+            int searchFrom = 0;
+
+            ByteBuffer buffer = carryOverBuffer.buffer();
+            while (true) {
+                final boolean endOfInput = channel.read(buffer) == -1;
+                buffer.flip();
+                final int limit = buffer.limit();
+                // a delimiter at the limit is accepted as is, unless the content may yet grow
+                final boolean resolveAtLimit = endOfInput && includePartialLastLine;
+
+                int count = 0;
+                int lineStart = 0;
+                int delimiterPos;
+                while ((delimiterPos = byteDelimiter.indexIn(buffer, searchFrom, limit)) != -1) {
+                    final int delimiterLength = byteDelimiter.matchLengthAt(buffer, delimiterPos);
+                    if (!resolveAtLimit && byteDelimiter.mayExtend(buffer, delimiterPos, limit, delimiterLength)) {
+                        // a longer alternative may complete with the next fill
+                        break;
+                    }
+                    if (filter == null || filter.matches(buffer, lineStart, delimiterPos)) {
+                        if (count == starts.length) {
+                            starts = Arrays.copyOf(starts, count * 2);
+                            ends = Arrays.copyOf(ends, count * 2);
                         }
+                        starts[count] = lineStart;
+                        ends[count] = delimiterPos;
+                        ++count;
                     }
+                    lineStart = delimiterPos + delimiterLength;
+                    searchFrom = lineStart;
+                }
 
-                    if (previousNewLinePos == 0 && (activeBuffer.limit() == activeBuffer.capacity())) {
-                        throw new IOException("Line length exceeded read buffer at "+totalAmountRead);
+                // and include a remaining line if file didn't end with line delimiter
+                final boolean partialLastLine = resolveAtLimit && limit > lineStart;
+                if (partialLastLine && (filter == null || filter.matches(buffer, lineStart, limit))) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        ends = Arrays.copyOf(ends, count * 2);
                     }
+                    starts[count] = lineStart;
+                    ends[count] = limit;
+                    ++count;
+                }
+                if (partialLastLine) {
+                    lineStart = limit;
+                }
 
-                    remainder = activeBuffer.duplicate();
-                    remainder.position(previousNewLinePos);
+                if (count > 0 && !observer.observeLines(buffer, starts, ends, count, bufferPositionInFile)) {
+                    return bufferPositionInFile + lineStart;
+                }
 
-                    // copy over the remainder to the carry-over buffer
-                    buffers.getLast().getBuffer().put(remainder.duplicate());
-                    // prep active to become carry-over
-                    activeBuffer.clear();
-                    // swap carry-over for active
-                    buffers.addFirst(buffers.removeLast());
+                if (endOfInput) {
+                    observer.observeEndOfFile(bufferPositionInFile + limit);
+                    return bufferPositionInFile + lineStart;
                 }
 
+                // a partial delimiter may be at the end, so only skip what definitely can't start one
+                searchFrom = Math.max(0, limit - lineStart - byteDelimiter.maxLength() + 1);
+                bufferPositionInFile += lineStart;
+                buffer = carryOverBuffer.carryOver(lineStart);
+            }
+        } finally {
+            carryOverBuffer.release();
+            if (meter != null) {
+                meter.carriedOver += carryOverBuffer.carriedOver;
             }
+        }
+    }
 
-            // and check for a remaining line if file didn't end with line delimiter
-            if (remainder != null && remainder.hasRemaining()) {
-                int sizeOfRemainder = remainder.remaining();
-                CharBuffer charBuffer = getCharset().newDecoder().decode(remainder);
-                observer.observeLine(charBuffer,
-                        totalAmountRead - sizeOfRemainder);
+    /**
+     * Scans gzip content, reporting the position of each line within the uncompressed content, while
+     * building an index of the places from which a later scan could start.
+     *
+     * @param compressed a channel positioned at the start of the gzip file
+     * @param observer observes the lines of the uncompressed content
+     * @return the checkpoints, at most one per {@link #getGzipCheckpointInterval()} of uncompressed content,
+     * for use with {@link #scanGzip(java.nio.channels.SeekableByteChannel, GzipIndex.Checkpoint, Observer)}
+     * @throws IllegalStateException if a line filter is set, since the index must locate line starts from
+     * every line for the checkpoints to suit later scans with any filter
+     */
+    public GzipIndex scanGzip(ReadableByteChannel compressed, final Observer observer) throws IOException {
+        if (lineFilter != null) {
+            throw new IllegalStateException("Cannot build a gzip index with a line filter set");
+        }
+        final GzipIndex index = new GzipIndex(gzipCheckpointInterval);
+        final InflatingChannel inflating = InflatingChannel.gzip(compressed, 0, 0, index, inflateBufferSize());
+        try {
+            scanFrom(inflating, 0, new Observer() {
+                @Override
+                public boolean observeLine(CharSequence line, long position) {
+                    index.lineObserved(position);
+                    return observer.observeLine(line, position);
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                    index.endObserved(position);
+                    observer.observeEndOfFile(position);
+                }
+            }, true);
+        } finally {
+            inflating.end();
+        }
+        return index;
+    }
+
+    /**
+     * Scans gzip content from a checkpoint of its index, without decompressing anything before it. If a
+     * line is in progress at the checkpoint, its remainder is decompressed but skipped, so that scanning
+     * starts at {@link GzipIndex.Checkpoint#getFirstLineStart()} as found when the index was built.
+     *
+     * @param compressed the gzip file, which is positioned by this method
+     * @param from a checkpoint obtained from the index built by
+     *             {@link #scanGzip(java.nio.channels.ReadableByteChannel, Observer)}
+     * @param observer observes the lines, with positions within the uncompressed content
+     * @throws IllegalArgumentException if the checkpoint was obtained before its first line start was known
+     */
+    public void scanGzip(SeekableByteChannel compressed, GzipIndex.Checkpoint from, Observer observer)
+            throws IOException {
+        final long firstLineStart = from.getFirstLineStart();
+        if (firstLineStart < from.getUncompressedOffset()) {
+            throw new IllegalArgumentException("Checkpoint does not have its first line start resolved: " + from);
+        }
+        compressed.position(from.getCompressedOffset());
+        final InflatingChannel inflating = InflatingChannel.gzip(compressed, from.getCompressedOffset(),
+                from.getUncompressedOffset(), null, inflateBufferSize());
+        try {
+            // skip the remainder of the line in progress, which may even be the tail of a delimiter
+            long remaining = firstLineStart - from.getUncompressedOffset();
+            if (remaining > 0) {
+                final ByteBuffer skipped = ByteBuffer.allocate((int) Math.min(remaining, inflateBufferSize()));
+                while (remaining > 0) {
+                    skipped.clear();
+                    skipped.limit((int) Math.min(remaining, skipped.capacity()));
+                    final int amountRead = inflating.read(skipped);
+                    if (amountRead == -1) {
+                        throw new EOFException("Content ended before the line start at " + firstLineStart);
+                    }
+                    remaining -= amountRead;
+                }
             }
-            observer.observeEndOfFile(totalAmountRead);
+            scanFrom(inflating, firstLineStart, observer, true);
         } finally {
-            releaseBuffers(buffers);
+            inflating.end();
+        }
+    }
+
+    /**
+     * Scans the lines of the channel from its end toward its start, which suits queries such as the last
+     * few lines of a large log. Blocks of {@link #getBufferSize()} bytes are read backward from the end of
+     * the channel with positional reads, so the amount read is proportional to the lines observed rather
+     * than to the size of the channel.
+     * <p>Lines are given newest-first along with their exact byte offsets. A final line without a trailing
+     * delimiter is given first, as the forward scans would give it last. Each line is decoded to a
+     * {@link String}, unless {@link #isLazyDecoding()} in which case it is a {@link ByteSequence} that is
+     * only valid until the observer returns.</p>
+     * <p>Delimiters that can overlap themselves, such as <code>"aa"</code>, may be located differently
+     * than by a forward scan; the usual line delimiters are not affected.</p>
+     *
+     * @param channel the channel to scan from its end regardless of its position, which is left unspecified
+     * @param observer receives the lines newest-first. Its {@link Observer#observeEndOfFile(long)} is invoked
+     *                 with zero once the start of the channel is reached, unless it stopped the scan early.
+     * @throws IllegalStateException if the charset and delimiters do not allow lines to be located by
+     * their bytes, which requires ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters
+     */
+    public void scanReverse(SeekableByteChannel channel, Observer observer) throws IOException {
+        if (!isByteScannable()) {
+            throw new IllegalStateException("Reverse scans require ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters");
+        }
+        final ByteDelimiter byteDelimiter = ByteDelimiter.encode(delimiters, charset);
+        final LineFilter filter = createLineFilter();
+        final int blockSize = Math.max(bufferSize, byteDelimiter.maxLength());
+
+        // the window holds the bytes from windowStart up to at least lineEnd at the end of the array
+        byte[] bytes = new byte[blockSize * 2];
+        ByteBuffer window = ByteBuffer.wrap(bytes);
+        int dataStart = bytes.length;
+        long windowStart = channel.size();
+        // the end of the content of the newest line not yet observed
+        long lineEnd = windowStart;
+        boolean trailing = true;
+
+        while (true) {
+            int delimiterEnd = byteDelimiter.lastEndIn(window, dataStart, dataStart + (int) (lineEnd - windowStart));
+            // a longer delimiter ending at the same place may start before the window
+            if (delimiterEnd != -1 && windowStart > 0 && delimiterEnd - dataStart < byteDelimiter.maxLength()) {
+                delimiterEnd = -1;
+            }
+
+            if (delimiterEnd == -1 && windowStart > 0) {
+                final int blockLength = (int) Math.min(blockSize, windowStart);
+                if (dataStart < blockLength) {
+                    // discard what was observed already and grow if the line is still too long
+                    final int retained = (int) (lineEnd - windowStart);
+                    final int capacity = retained + blockLength > bytes.length ?
+                            Math.max(bytes.length * 2, retained + blockLength) : bytes.length;
+                    final byte[] moved = capacity == bytes.length ? bytes : new byte[capacity];
+                    System.arraycopy(bytes, dataStart, moved, capacity - retained, retained);
+                    bytes = moved;
+                    window = ByteBuffer.wrap(bytes);
+                    dataStart = capacity - retained;
+                }
+                windowStart -= blockLength;
+                dataStart -= blockLength;
+                readFully(channel, ByteBuffer.wrap(bytes, dataStart, blockLength), windowStart);
+                continue;
+            }
+
+            final long lineStart = delimiterEnd == -1 ? 0 : windowStart + (delimiterEnd - dataStart);
+            // much like the forward scans, an empty remainder after the last delimiter is not a line
+            if (!trailing || lineStart < lineEnd) {
+                final int start = dataStart + (int) (lineStart - windowStart);
+                final int end = dataStart + (int) (lineEnd - windowStart);
+                if ((filter == null || filter.matches(window, start, end))
+                        && !observer.observeLine(retainable(new ByteSequence(window, start, end, charset)), lineStart)) {
+                    return;
+                }
+            }
+            trailing = false;
+
+            if (delimiterEnd == -1) {
+                break;
+            }
+            lineEnd = lineStart - byteDelimiter.suffixLength(window, dataStart, delimiterEnd);
         }
+
+        observer.observeEndOfFile(0);
     }
 
-    private LinkedList<ByteBufferInstance> allocateBuffers(int count) {
-        LinkedList<ByteBufferInstance> bufferList = new LinkedList<>();
-        for (int i = 0; i < count; ++i) {
-            bufferList.add(allocateBuffer());
+    private static void readFully(SeekableByteChannel channel, ByteBuffer buffer, long position) throws IOException {
+        if (!(channel instanceof FileChannel)) {
+            channel.position(position);
+        }
+        while (buffer.hasRemaining()) {
+            final int read = channel instanceof FileChannel ?
+                    ((FileChannel) channel).read(buffer, position) : channel.read(buffer);
+            if (read < 0) {
+                throw new EOFException("Channel was truncated while scanning at " + position);
+            }
+            position += read;
         }
-        return bufferList;
     }
 
-    private void releaseBuffers(LinkedList<ByteBufferInstance> buffers) {
-        for (ByteBufferInstance b : buffers) {
-            deallocateBuffer(b);
+    private int inflateBufferSize() {
+        return Math.max(bufferSize, 8192);
+    }
+
+    /**
+     * @return true if delimiters can be located by their bytes and lines are decoded independently of
+     * each other, which holds for charsets that are ASCII-compatible and ASCII delimiters
+     */
+    boolean isByteScannable() {
+        if (!ByteSequence.isSingleByte(charset) && !charset.equals(StandardCharsets.UTF_8)) {
+            return false;
+        }
+        for (String delimiter : delimiters) {
+            for (int i = 0; i < delimiter.length(); ++i) {
+                if (delimiter.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the filter for the configured patterns or null if lines are not filtered
+     * @throws IllegalStateException if lines are filtered but cannot be located by their bytes
+     */
+    private LineFilter createLineFilter() {
+        if (lineFilter == null) {
+            return null;
+        }
+        if (!isByteScannable()) {
+            throw new IllegalStateException("Line filters require ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters");
+        }
+        return LineFilter.encode(lineFilter, charset);
+    }
+
+    /**
+     * @return the line itself when decoding lazily, otherwise it decoded to a {@link String}
+     */
+    private CharSequence retainable(ByteSequence line) {
+        return lazyDecoding ? line : line.toString();
+    }
+
+    /**
+     * Convenience form of {@link #scanMapped(java.nio.channels.FileChannel, Observer)} that opens and
+     * closes the file itself.
+     */
+    public void scanMapped(Path file, Observer observer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scanMapped(channel, observer);
+        }
+    }
+
+    /**
+     * Scans the entire file by memory-mapping it in windows of {@link #getMappedWindowSize()} bytes and
+     * locating the delimiters directly within the mapped bytes. Unlike
+     * {@link #scan(java.nio.channels.ReadableByteChannel, Observer)} no content is copied or decoded up
+     * front: each line is given to the observer as a {@link ByteSequence} view over the mapping.
+     * <p>The delimiter is located by its encoded bytes, so this mode is intended for charsets where
+     * that is unambiguous, such as ISO-8859-1, US-ASCII and UTF-8.</p>
+     *
+     * @param channel the file to scan starting from offset zero regardless of the channel's position
+     * @param observer receives the lines and their exact byte offsets
+     * @throws IOException if the mapping fails
+     */
+    public void scanMapped(FileChannel channel, Observer observer) throws IOException {
+        final ByteDelimiter byteDelimiter = ByteDelimiter.encode(delimiters, charset);
+        final LineFilter filter = createLineFilter();
+        final long size = channel.size();
+
+        if (scanMappedRange(channel, byteDelimiter, filter, 0, size, size, observer, null)) {
+            observer.observeEndOfFile(size);
+        }
+    }
+
+    /**
+     * Convenience form of
+     * {@link #scanParallel(java.nio.channels.FileChannel, Observer, java.util.concurrent.ExecutorService, boolean)}
+     * that scans on a fork-join pool sized to the available processors and created just for this scan.
+     */
+    public void scanParallel(FileChannel channel, Observer observer, boolean ordered) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            scanParallel(channel, observer, pool, ordered);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Scans the file in the same manner as {@link #scanMapped(java.nio.channels.FileChannel, Observer)}, but
+     * splits it into ranges of {@link #getParallelSplitSize()} bytes that are scanned concurrently by the
+     * given executor. Each range boundary is snapped forward to the start of the next line, so every line
+     * is scanned exactly once by the range in which it starts, and positions are the exact byte offsets
+     * within the file.
+     * <p>Delimiters that can overlap themselves, such as <code>"aa"</code>, do not allow a range boundary to
+     * be snapped without scanning from the start of the file, so the file is then scanned as a single
+     * range.</p>
+     *
+     * @param channel the file to scan
+     * @param observer receives the lines. When <code>ordered</code> is false it is invoked concurrently
+     *                 from the executor's threads and must be thread-safe.
+     * @param executor runs the scanning of each range
+     * @param ordered if true, the lines are delivered in file order from the calling thread. The ranges
+     *                are still scanned concurrently, but the lines of each completed range are retained as
+     *                views until that range's turn for delivery, so only about as many ranges as the
+     *                executor's parallelism are submitted ahead of the range being delivered. If false,
+     *                each line is delivered as soon as it is found with no ordering between ranges.
+     * @throws IOException if mapping any of the ranges failed
+     */
+    public void scanParallel(final FileChannel channel, final Observer observer, ExecutorService executor,
+                             final boolean ordered) throws IOException {
+        final ByteDelimiter byteDelimiter = ByteDelimiter.encode(delimiters, charset);
+        final LineFilter filter = createLineFilter();
+        final long size = channel.size();
+        final AtomicBoolean stopped = new AtomicBoolean();
+
+        // bounds how many ranges' lines can be retained while waiting for their delivery
+        final int rangesAhead = ordered ? parallelismOf(executor) : Integer.MAX_VALUE;
+        final long splitSize = byteDelimiter.isSelfOverlapping() ? Math.max(1, size) : parallelSplitSize;
+        final Deque<Future<LineCollector>> ranges = new ArrayDeque<>();
+        long nextStart = 0;
+        try {
+            while (true) {
+                for (; nextStart < size && ranges.size() <= rangesAhead; nextStart += splitSize) {
+                    final long rangeStart = nextStart;
+                    final long rangeEnd = Math.min(size, nextStart + splitSize);
+                    ranges.add(executor.submit(new Callable<LineCollector>() {
+                        @Override
+                        public LineCollector call() throws Exception {
+                            final LineCollector collector = ordered ? new LineCollector() : null;
+                            if (!scanMappedRange(channel, byteDelimiter, filter, rangeStart, rangeEnd, size,
+                                    ordered ? collector : observer, stopped)) {
+                                stopped.set(true);
+                            }
+                            return collector;
+                        }
+                    }));
+                }
+
+                final Future<LineCollector> range = ranges.poll();
+                if (range == null) {
+                    break;
+                }
+                final LineCollector collector = range.get();
+                if (ordered && !collector.replayTo(observer)) {
+                    return;
+                }
+            }
+            if (stopped.get()) {
+                // an observer stopped one of the unordered ranges
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for range scans");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Scanning range", e.getCause());
+        } finally {
+            // let any outstanding ranges bail out early when we're stopping or failing
+            stopped.set(true);
+            for (Future<LineCollector> range : ranges) {
+                range.cancel(false);
+            }
+        }
+
+        observer.observeEndOfFile(size);
+    }
+
+    private static int parallelismOf(ExecutorService executor) {
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getParallelism();
+        }
+        if (executor instanceof ThreadPoolExecutor && ((ThreadPoolExecutor) executor).getCorePoolSize() > 0) {
+            return ((ThreadPoolExecutor) executor).getCorePoolSize();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @UsedExternally
+    public long getParallelSplitSize() {
+        return parallelSplitSize;
+    }
+
+    /**
+     * @param parallelSplitSize the number of bytes in each range scanned by
+     *                          {@link #scanParallel(java.nio.channels.FileChannel, Observer, boolean)}
+     */
+    public void setParallelSplitSize(long parallelSplitSize) {
+        this.parallelSplitSize = parallelSplitSize;
+    }
+
+    /**
+     * Scans the lines that start within the given byte range of the file, where a line is considered to
+     * start at offset zero or just after a delimiter. The last line scanned may extend past the end of the
+     * range.
+     *
+     * @param stopped if non-null, scanning bails out as soon as this becomes true
+     * @return false if scanning was stopped by the observer or the <code>stopped</code> flag
+     */
+    private boolean scanMappedRange(FileChannel channel, ByteDelimiter byteDelimiter, LineFilter filter, long start,
+                                    long end, long size, Observer observer, AtomicBoolean stopped)
+            throws IOException {
+        long windowStart = start > 0 ? findLineStart(channel, byteDelimiter, start, size) : 0;
+        // grows temporarily to accommodate a line longer than the configured window
+        long windowLimit = mappedWindowSize;
+        // the bytes at the start of the window already searched when it had to grow
+        int searchFrom = 0;
+
+        while (windowStart < end) {
+            final int windowSize = (int) Math.min(windowLimit, size - windowStart);
+            final boolean lastWindow = windowStart + windowSize == size;
+            final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+
+            int lineStart = 0;
+            while (windowStart + lineStart < end) {
+                if (stopped != null && stopped.get()) {
+                    return false;
+                }
+                final int delimiterPos = byteDelimiter.indexIn(window, Math.max(lineStart, searchFrom), windowSize);
+                if (delimiterPos == -1 || (!lastWindow && byteDelimiter.mayExtend(window, delimiterPos, windowSize,
+                        byteDelimiter.matchLengthAt(window, delimiterPos)))) {
+                    // the latter to re-map once a longer alternative can be seen in full
+                    break;
+                }
+                if ((filter == null || filter.matches(window, lineStart, delimiterPos))
+                        && !observer.observeLine(new ByteSequence(window, lineStart, delimiterPos, charset),
+                        windowStart + lineStart)) {
+                    return false;
+                }
+                lineStart = delimiterPos + byteDelimiter.matchLengthAt(window, delimiterPos);
+            }
+
+            if (windowStart + lineStart >= end) {
+                break;
+            }
+
+            if (lastWindow) {
+                // and check for a remaining line if file didn't end with line delimiter
+                return (filter != null && !filter.matches(window, lineStart, windowSize))
+                        || observer.observeLine(new ByteSequence(window, lineStart, windowSize, charset),
+                        windowStart + lineStart);
+            }
+
+            if (lineStart == 0) {
+                if (windowLimit >= Integer.MAX_VALUE) {
+                    throw new IOException("Line length exceeded largest possible mapping at " + windowStart);
+                }
+                windowLimit = Math.min(Integer.MAX_VALUE, windowLimit * 2);
+                searchFrom = Math.max(0, windowSize - byteDelimiter.maxLength() + 1);
+            }
+            else {
+                // re-map starting at the partial line
+                windowStart += lineStart;
+                windowLimit = mappedWindowSize;
+                searchFrom = 0;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the offset of the first line that starts at or after the given offset or the size of the file
+     * if there are none
+     */
+    private long findLineStart(SeekableByteChannel channel, ByteDelimiter byteDelimiter, long from, long size)
+            throws IOException {
+        // back up enough to find a delimiter that ends exactly at the given offset
+        long searchStart = Math.max(0, from - byteDelimiter.maxLength());
+        final ByteBuffer window = ByteBuffer.allocate(Math.max(bufferSize, byteDelimiter.maxLength() * 2));
+
+        while (searchStart < size) {
+            final int windowSize = (int) Math.min(window.capacity(), size - searchStart);
+            window.clear();
+            window.limit(windowSize);
+            readFully(channel, window, searchStart);
+
+            final boolean lastWindow = searchStart + windowSize == size;
+            int searchFrom = 0;
+            int delimiterPos;
+            while ((delimiterPos = byteDelimiter.indexIn(window, searchFrom, windowSize)) != -1) {
+                final int delimiterLength = byteDelimiter.matchLengthAt(window, delimiterPos);
+                if (!lastWindow && byteDelimiter.mayExtend(window, delimiterPos, windowSize, delimiterLength)) {
+                    // the next window overlaps enough to see a longer alternative in full
+                    break;
+                }
+                final long lineStart = searchStart + delimiterPos + delimiterLength;
+                // a shorter alternative may end before the given offset
+                if (lineStart >= from) {
+                    return lineStart;
+                }
+                searchFrom = delimiterPos + 1;
+            }
+            if (lastWindow) {
+                break;
+            }
+            // overlap the windows in case the delimiter straddles them
+            searchStart += Math.max(1, windowSize - byteDelimiter.maxLength() + 1);
         }
+
+        return size;
     }
 
     private void deallocateBuffer(ByteBufferInstance b) {
@@ -165,37 +1101,149 @@ public class ChannelLineScanner {
         }
     }
 
+    private void releaseBuffer(ByteBufferInstance b, boolean pooled) {
+        if (pooled) {
+            deallocateBuffer(b);
+        }
+    }
+
     private ByteBufferInstance allocateBuffer() {
-        try {
-            return bufferPool.borrowObject();
-        } catch (Exception e) {
-            throw new RuntimeException("Trying to allocate buffer", e);
+        return allocateBuffer(0);
+    }
+
+    /**
+     * @param minCapacity if positive, the least capacity needed from a {@link DirectBufferPool}, otherwise
+     *                    a buffer of the pool's base size is borrowed
+     */
+    private ByteBufferInstance allocateBuffer(int minCapacity) {
+        final ScanMetrics metrics = this.metrics;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final ByteBufferInstance instance;
+        if (minCapacity > 0) {
+            instance = ((DirectBufferPool) bufferPool).borrow(minCapacity);
         }
+        else {
+            try {
+                instance = bufferPool.borrowObject();
+            } catch (Exception e) {
+                throw new RuntimeException("Trying to allocate buffer", e);
+            }
+        }
+        // only the borrowing thread sees the instance until it is returned
+        final boolean created = instance.unborrowed;
+        instance.unborrowed = false;
+        if (metrics != null) {
+            metrics.bufferBorrowed(System.nanoTime() - start, created);
+        }
+        return instance;
+    }
+
+    @UsedExternally
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * When enabled and the charset is ISO-8859-1, US-ASCII or UTF-8 with an ASCII delimiter,
+     * {@link #scan(java.nio.channels.ReadableByteChannel, Observer)} locates the delimiters directly within
+     * the raw bytes and defers decoding until the observer actually reads a line. The line given to the
+     * observer is then a reused view that is only valid during the
+     * {@link Observer#observeLine(CharSequence, long)} callback, so it must be copied, such as with
+     * <code>toString()</code>, to be retained.
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    @UsedExternally
+    public String[] getLineFilter() {
+        return lineFilter != null ? lineFilter.clone() : null;
     }
 
     /**
+     * Only the lines containing at least one of the given literal patterns are given to observers. The
+     * patterns are matched against the raw bytes of each line before it is decoded, so discarded lines
+     * cost little more than locating them, and the lines observed keep their exact byte offsets.
+     * <p>This applies to every scan mode. It requires that lines can be located by their bytes, as
+     * described for {@link #scanBatches(java.nio.channels.ReadableByteChannel, BatchObserver)}, otherwise
+     * scans fail with an {@link IllegalStateException}. Where a scan would otherwise decode every line up
+     * front, only the matching lines are decoded.</p>
      *
-     * @param buffer the current file chunk positioned at the start or just past the last
-     *               delimiter
-     * @return the position before the delimiter
-     * @throws IOException
+     * @param patterns the patterns to look for, or none to observe every line
      */
-    private int scanForNewLine(CharBuffer buffer) throws IOException {
-        int lookingAt = 0;
-        int prePosition = buffer.position();
-        while (buffer.remaining() > 0) {
-            char c = buffer.get();
-            if (c == delimiter[lookingAt++]) {
-                if (lookingAt >= delimiter.length) {
-                    return prePosition;
-                }
-            }
-            else {
-                prePosition = buffer.position();
-                lookingAt = 0;
+    public void setLineFilter(String... patterns) {
+        if (patterns == null || patterns.length == 0) {
+            this.lineFilter = null;
+            return;
+        }
+        for (String pattern : patterns) {
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("pattern cannot be empty");
             }
         }
-        return -1;
+        this.lineFilter = patterns.clone();
+    }
+
+    @UsedExternally
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Measures scans of channels, which includes
+     * {@link #scan(java.nio.channels.ReadableByteChannel, Observer)},
+     * {@link #scanBatches(java.nio.channels.ReadableByteChannel, BatchObserver)} and the modes built on
+     * them, along with the buffers they borrow. The mapped and reverse scans are not measured.
+     *
+     * @param metrics receives the measurements or null, the default, to measure nothing
+     */
+    public void setMetrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @UsedExternally
+    public long getGzipCheckpointInterval() {
+        return gzipCheckpointInterval;
+    }
+
+    /**
+     * @param gzipCheckpointInterval the least number of uncompressed bytes between the checkpoints of the
+     *                               index built by {@link #scanGzip(java.nio.channels.ReadableByteChannel, Observer)}
+     */
+    public void setGzipCheckpointInterval(long gzipCheckpointInterval) {
+        this.gzipCheckpointInterval = gzipCheckpointInterval;
+    }
+
+    @UsedExternally
+    public int getReadAheadDepth() {
+        return readAheadDepth;
+    }
+
+    /**
+     * When greater than zero, {@link #scan(java.nio.channels.ReadableByteChannel, Observer)} and
+     * {@link #scanBatches(java.nio.channels.ReadableByteChannel, BatchObserver)} read the channel on another
+     * thread, up to this many buffers ahead of the scanning, so that slow I/O overlaps with decoding and
+     * scanning. The read-ahead buffers come from the {@link DirectBufferPool} if one is in use. Since the
+     * bytes are copied from the read-ahead buffers, it only pays off where reads are slow, such as for
+     * network-attached storage. The default of zero reads on the scanning thread.
+     * <p>When a scan stops early, the channel's position will be beyond the content that was scanned.</p>
+     */
+    public void setReadAheadDepth(int readAheadDepth) {
+        this.readAheadDepth = readAheadDepth;
+    }
+
+    @UsedExternally
+    public Executor getReadAheadExecutor() {
+        return readAheadExecutor;
+    }
+
+    /**
+     * @param readAheadExecutor runs the reading of each scan with read-ahead enabled, which must be able to
+     *                          start it promptly since the scan waits for it. If null, the default, a
+     *                          daemon thread is started for each scan.
+     */
+    public void setReadAheadExecutor(Executor readAheadExecutor) {
+        this.readAheadExecutor = readAheadExecutor;
     }
 
     public Charset getCharset() {
@@ -206,6 +1254,169 @@ public class ChannelLineScanner {
         this.charset = charset;
     }
 
+    /**
+     * Tallies a single scan in plain fields, since it is confined to the scanning thread, by standing in for
+     * the channel it reads and the observer it notifies. The tally is reported once the scan ends.
+     */
+    private static class ScanMeter implements ReadableByteChannel {
+        private final ReadableByteChannel source;
+        private final long startNanos = System.nanoTime();
+        long bytesRead;
+        long readNanos;
+        long lines;
+        long longestLine;
+        long carriedOver;
+
+        ScanMeter(ReadableByteChannel source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            final long start = System.nanoTime();
+            final int amountRead = source.read(dst);
+            readNanos += System.nanoTime() - start;
+            if (amountRead > 0) {
+                bytesRead += amountRead;
+            }
+            return amountRead;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+        private void lineObserved(long length) {
+            ++lines;
+            if (length > longestLine) {
+                longestLine = length;
+            }
+        }
+
+        Observer observing(final Observer observer) {
+            return new Observer() {
+                @Override
+                public boolean observeLine(CharSequence line, long position) {
+                    // avoids decoding a lazily decoded line just to measure it
+                    lineObserved(line instanceof ByteSequence ? ((ByteSequence) line).byteLength() : line.length());
+                    return observer.observeLine(line, position);
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                    observer.observeEndOfFile(position);
+                }
+            };
+        }
+
+        BatchObserver observing(final BatchObserver observer) {
+            return new BatchObserver() {
+                @Override
+                public boolean observeLines(ByteBuffer buffer, int[] starts, int[] ends, int count, long baseOffset) {
+                    for (int i = 0; i < count; ++i) {
+                        lineObserved(ends[i] - starts[i]);
+                    }
+                    return observer.observeLines(buffer, starts, ends, count, baseOffset);
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                    observer.observeEndOfFile(position);
+                }
+            };
+        }
+
+        void report(ScanMetrics metrics) {
+            final long elapsed = System.nanoTime() - startNanos;
+            metrics.scanEnded(bytesRead, lines, readNanos, elapsed - readNanos, carriedOver, longestLine);
+        }
+    }
+
+    /**
+     * Passes along the lines that start before the end of a range and stops at the first that does not.
+     */
+    private static class RangeObserver implements Observer {
+        private final Observer observer;
+        private final long end;
+        // the offset of the first line beyond the range, once reached
+        long nextRangeStart = -1;
+
+        RangeObserver(Observer observer, long end) {
+            this.observer = observer;
+            this.end = end;
+        }
+
+        @Override
+        public boolean observeLine(CharSequence line, long position) {
+            if (position >= end) {
+                nextRangeStart = position;
+                return false;
+            }
+            return observer.observeLine(line, position);
+        }
+
+        @Override
+        public void observeEndOfFile(long position) {
+            observer.observeEndOfFile(position);
+        }
+    }
+
+    /**
+     * The read buffer of the byte-level scans, which carries the partial line at the end of each fill over
+     * to the next. It grows to hold a line longer than itself and goes back to its base size after that line.
+     */
+    private class CarryOverBuffer {
+        private ByteBufferInstance instance = allocateBuffer();
+        // grown buffers only come from the pool if it supports size classes
+        private boolean pooled = true;
+        private final int baseCapacity = instance.getBuffer().capacity();
+        long carriedOver;
+
+        ByteBuffer buffer() {
+            return instance.getBuffer();
+        }
+
+        /**
+         * @param lineStart the start of the partial line within the flipped buffer
+         * @return the buffer to read into next, with the partial line at its front
+         */
+        ByteBuffer carryOver(int lineStart) {
+            final ByteBuffer buffer = instance.getBuffer();
+            buffer.position(lineStart);
+            final int carried = buffer.limit() - lineStart;
+            carriedOver += carried;
+
+            if (carried == buffer.capacity() || (buffer.capacity() > baseCapacity && carried <= baseCapacity / 2)) {
+                // grow to hold a line longer than the buffer or go back to the base size after one
+                final int capacity = carried == buffer.capacity() ? buffer.capacity() * 2 : baseCapacity;
+                final boolean grownPooled = bufferPool instanceof DirectBufferPool &&
+                        capacity <= ((DirectBufferPool) bufferPool).getMaxCapacity();
+                final ByteBufferInstance grown = grownPooled ? allocateBuffer(capacity) :
+                        capacity == baseCapacity ? allocateBuffer() :
+                                new ByteBufferInstance(ByteBuffer.allocate(capacity));
+                grown.getBuffer().put(buffer);
+                releaseBuffer(instance, pooled);
+                instance = grown;
+                pooled = grownPooled || capacity == baseCapacity;
+            }
+            else {
+                // carry-over the partial line to the front of the buffer
+                buffer.compact();
+            }
+            return instance.getBuffer();
+        }
+
+        void release() {
+            releaseBuffer(instance, pooled);
+        }
+    }
+
     public interface Observer {
 
         /**
@@ -221,4 +1432,31 @@ public class ChannelLineScanner {
 
         void observeEndOfFile(long position);
     }
+
+    /**
+     * Receives all of the lines located in a buffer fill at once, for use with
+     * {@link #scanBatches(java.nio.channels.ReadableByteChannel, BatchObserver)}.
+     */
+    public interface BatchObserver {
+
+        /**
+         * This method gets invoked after each buffer fill in which at least one line was scanned. The line
+         * <code>i</code> is the bytes of the buffer from <code>starts[i]</code>, inclusive, to
+         * <code>ends[i]</code>, exclusive, and starts at the file position <code>baseOffset + starts[i]</code>.
+         * <p>The buffer and arrays are reused, so they are only valid during this call and the buffer must
+         * only be accessed with absolute indices.</p>
+         * <p>NOTE: if the implementation returns <code>false</code>, then
+         * {@link #observeEndOfFile(long)} will not be invoked.</p>
+         *
+         * @param buffer the bytes of the lines, excluding delimiters
+         * @param starts the index in the buffer of the start of each line
+         * @param ends the index in the buffer just past the end of each line
+         * @param count the number of lines, which is less than or equal to the length of the arrays
+         * @param baseOffset the byte-position in the file of the start of the buffer
+         * @return true to continue scanning or false to stop after this batch
+         */
+        boolean observeLines(ByteBuffer buffer, int[] starts, int[] ends, int count, long baseOffset);
+
+        void observeEndOfFile(long position);
+    }
 }
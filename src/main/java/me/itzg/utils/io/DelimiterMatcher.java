@@ -0,0 +1,161 @@
+package me.itzg.utils.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A precomputed automaton that recognizes one or more alternative delimiters within a stream of chars in
+ * a single pass. It is Knuth-Morris-Pratt generalized to several patterns (Aho-Corasick), so overlapping
+ * prefixes are never missed and each char is examined once.
+ * <p>The automaton itself is immutable and the caller holds the current state as an <code>int</code>,
+ * which allows matching to resume across buffer refills and a single instance to be shared by
+ * concurrent scans.</p>
+ */
+class DelimiterMatcher {
+    static final int INITIAL_STATE = 0;
+
+    // per state, the chars with a transition and the state each leads to
+    private final char[][] transitionChars;
+    private final int[][] transitionStates;
+    // per state, where to continue when no transition matches
+    private final int[] failure;
+    // per state, the length of the longest delimiter that ends there or zero
+    private final int[] matchLength;
+    // per state, the number of chars matched to arrive there
+    private final int[] depth;
+    private final int maxLength;
+
+    DelimiterMatcher(String... delimiters) {
+        if (delimiters.length == 0) {
+            throw new IllegalArgumentException("At least one delimiter is required");
+        }
+
+        // build the trie
+        final List<char[]> chars = new ArrayList<>();
+        final List<int[]> states = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        final List<Boolean> terminal = new ArrayList<>();
+        chars.add(new char[0]);
+        states.add(new int[0]);
+        depths.add(0);
+        terminal.add(false);
+
+        int longest = 0;
+        for (String delimiter : delimiters) {
+            if (delimiter.isEmpty()) {
+                throw new IllegalArgumentException("delimiter cannot be empty");
+            }
+            longest = Math.max(longest, delimiter.length());
+
+            int state = INITIAL_STATE;
+            for (int i = 0; i < delimiter.length(); ++i) {
+                final char c = delimiter.charAt(i);
+                int next = find(chars.get(state), states.get(state), c);
+                if (next == -1) {
+                    next = chars.size();
+                    chars.add(new char[0]);
+                    states.add(new int[0]);
+                    depths.add(i + 1);
+                    terminal.add(false);
+
+                    final char[] stateChars = Arrays.copyOf(chars.get(state), chars.get(state).length + 1);
+                    stateChars[stateChars.length - 1] = c;
+                    final int[] stateTargets = Arrays.copyOf(states.get(state), states.get(state).length + 1);
+                    stateTargets[stateTargets.length - 1] = next;
+                    chars.set(state, stateChars);
+                    states.set(state, stateTargets);
+                }
+                state = next;
+            }
+            terminal.set(state, true);
+        }
+
+        final int stateCount = chars.size();
+        transitionChars = chars.toArray(new char[stateCount][]);
+        transitionStates = states.toArray(new int[stateCount][]);
+        failure = new int[stateCount];
+        matchLength = new int[stateCount];
+        depth = new int[stateCount];
+        for (int i = 0; i < stateCount; ++i) {
+            depth[i] = depths.get(i);
+        }
+        maxLength = longest;
+
+        // breadth-first so that failure targets, being shallower, are always computed first
+        final int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+        queue[tail++] = INITIAL_STATE;
+        while (head < tail) {
+            final int state = queue[head++];
+            matchLength[state] = terminal.get(state) ? depths.get(state) : matchLength[failure[state]];
+
+            for (int i = 0; i < transitionChars[state].length; ++i) {
+                final int child = transitionStates[state][i];
+                failure[child] = state == INITIAL_STATE ? INITIAL_STATE :
+                        step(failure[state], transitionChars[state][i]);
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private static int find(char[] chars, int[] states, char c) {
+        for (int i = 0; i < chars.length; ++i) {
+            if (chars[i] == c) {
+                return states[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the state after consuming the given char
+     */
+    int step(int state, char c) {
+        while (true) {
+            final int next = find(transitionChars[state], transitionStates[state], c);
+            if (next != -1) {
+                return next;
+            }
+            if (state == INITIAL_STATE) {
+                return INITIAL_STATE;
+            }
+            state = failure[state];
+        }
+    }
+
+    /**
+     * @return the length of the longest delimiter that was just completed upon arriving in the given
+     * state or zero if none
+     */
+    int matchLength(int state) {
+        return matchLength[state];
+    }
+
+    /**
+     * Determines whether a delimiter that was found could still be superseded by one starting at or before
+     * it, which would win since the earliest and then the longest delimiter is the one that ends a line.
+     *
+     * @param state the state after consuming the chars up to now
+     * @param minDepth the number of chars from the start of the delimiter found up to now
+     * @return true if a partially matched delimiter starting at or before the one found could still be
+     * completed by the chars to come
+     */
+    boolean canExtend(int state, int minDepth) {
+        // the failure chain holds every partial match in progress, each starting later than the last
+        while (depth[state] >= minDepth) {
+            if (transitionChars[state].length > 0) {
+                return true;
+            }
+            if (state == INITIAL_STATE) {
+                break;
+            }
+            state = failure[state];
+        }
+        return false;
+    }
+
+    int maxLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,258 @@
+package me.itzg.utils.io;
+
+import org.apache.commons.pool2.ObjectPool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct (off-heap) {@link java.nio.ByteBuffer}s that is intended for many concurrent scans.
+ * Unlike {@link org.apache.commons.pool2.impl.GenericObjectPool} it takes no locks: each thread first
+ * tries a buffer cached for its exclusive use and otherwise falls back to a lock-free shared queue.
+ * <p>Buffers are grouped into size classes where the smallest is the configured buffer size and each
+ * subsequent class doubles the capacity. {@link #borrowObject()} provides the smallest class and
+ * {@link #borrow(int)} any capacity up to the largest class. Idle retention is bounded by bytes rather
+ * than by count alone, so each larger class retains half as many buffers as the one before it and the
+ * largest classes retain none.</p>
+ * <p>Each thread caches at most one buffer per size class. Those count toward the bound of their class,
+ * so the idle buffers of a class, wherever they are held, never exceed its bound. However, a buffer
+ * cached by a thread is only released once that thread borrows it again or ends, not by
+ * {@link #clear()}.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class DirectBufferPool implements ObjectPool<ByteBufferInstance> {
+    static final int SIZE_CLASSES = 16;
+
+    private final int bufferSize;
+
+    private final SizeClass[] sizeClasses = new SizeClass[SIZE_CLASSES];
+
+    private final ThreadLocal<ByteBufferInstance[]> threadCache = new ThreadLocal<ByteBufferInstance[]>() {
+        @Override
+        protected ByteBufferInstance[] initialValue() {
+            return new ByteBufferInstance[SIZE_CLASSES];
+        }
+    };
+
+    private final AtomicInteger numActive = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param bufferSize the capacity of the smallest size class
+     */
+    public DirectBufferPool(int bufferSize) {
+        this(bufferSize, 64);
+    }
+
+    /**
+     * @param bufferSize the capacity of the smallest size class
+     * @param maxIdlePerClass the most buffers of the smallest size class retained in the shared queue,
+     *                        beyond which returned buffers are discarded. Each larger class retains half
+     *                        as many as the one before it, so that no class holds more than
+     *                        <code>maxIdlePerClass * bufferSize</code> idle bytes across its queue and the
+     *                        threads' caches. A class that comes to less than one buffer is not retained
+     *                        at all.
+     */
+    public DirectBufferPool(int bufferSize, int maxIdlePerClass) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+        for (int i = 0; i < SIZE_CLASSES; ++i) {
+            final long capacity = (long) bufferSize << i;
+            sizeClasses[i] = new SizeClass(capacity > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) capacity,
+                    maxIdlePerClass >> i);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return the capacity of the largest size class
+     */
+    public int getMaxCapacity() {
+        return sizeClasses[SIZE_CLASSES - 1].capacity;
+    }
+
+    /**
+     * @return a cleared buffer of the smallest size class
+     */
+    @Override
+    public ByteBufferInstance borrowObject() {
+        return borrowFrom(0);
+    }
+
+    /**
+     * @param minCapacity the least capacity needed
+     * @return a cleared buffer of the smallest size class that provides at least the given capacity
+     * @throws IllegalArgumentException if the capacity exceeds that of the largest size class
+     */
+    public ByteBufferInstance borrow(int minCapacity) {
+        return borrowFrom(sizeClassFor(minCapacity));
+    }
+
+    @Override
+    public void returnObject(ByteBufferInstance obj) {
+        numActive.decrementAndGet();
+        final int index = sizeClassOf(obj.getBuffer());
+        if (index == -1 || closed) {
+            discards.incrementAndGet();
+            return;
+        }
+
+        final SizeClass sizeClass = sizeClasses[index];
+        if (sizeClass.idle.incrementAndGet() > sizeClass.maxIdle) {
+            sizeClass.idle.decrementAndGet();
+            discards.incrementAndGet();
+            return;
+        }
+
+        final ByteBufferInstance[] cache = threadCache.get();
+        if (cache[index] == null) {
+            cache[index] = obj;
+        }
+        else {
+            sizeClass.queue.offer(obj);
+        }
+    }
+
+    @Override
+    public void invalidateObject(ByteBufferInstance obj) {
+        numActive.decrementAndGet();
+        discards.incrementAndGet();
+    }
+
+    @Override
+    public void addObject() {
+        final SizeClass sizeClass = sizeClasses[0];
+        sizeClass.idle.incrementAndGet();
+        sizeClass.queue.offer(new ByteBufferInstance(ByteBuffer.allocateDirect(sizeClass.capacity)));
+    }
+
+    /**
+     * @return the number of buffers retained across all size classes, including those cached by threads
+     */
+    @Override
+    public int getNumIdle() {
+        int total = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            total += sizeClass.idle.get();
+        }
+        return total;
+    }
+
+    @Override
+    public int getNumActive() {
+        return numActive.get();
+    }
+
+    /**
+     * @return the total number of borrows
+     */
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    /**
+     * @return the number of borrows that needed a newly allocated buffer
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of returned buffers that were released rather than retained
+     */
+    public long getDiscardCount() {
+        return discards.get();
+    }
+
+    /**
+     * Releases the buffers in the shared queues. Buffers cached by threads are retained until those
+     * threads end.
+     */
+    @Override
+    public void clear() {
+        for (SizeClass sizeClass : sizeClasses) {
+            while (sizeClass.queue.poll() != null) {
+                sizeClass.idle.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        clear();
+    }
+
+    private ByteBufferInstance borrowFrom(int index) {
+        if (closed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+        borrows.incrementAndGet();
+        numActive.incrementAndGet();
+        final SizeClass sizeClass = sizeClasses[index];
+
+        final ByteBufferInstance[] cache = threadCache.get();
+        ByteBufferInstance instance = cache[index];
+        if (instance != null) {
+            cache[index] = null;
+        }
+        else {
+            instance = sizeClass.queue.poll();
+        }
+
+        if (instance != null) {
+            sizeClass.idle.decrementAndGet();
+            instance.getBuffer().clear();
+            return instance;
+        }
+
+        misses.incrementAndGet();
+        return new ByteBufferInstance(ByteBuffer.allocateDirect(sizeClass.capacity));
+    }
+
+    private int sizeClassFor(int minCapacity) {
+        for (int i = 0; i < SIZE_CLASSES; ++i) {
+            if (sizeClasses[i].capacity >= minCapacity) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Capacity " + minCapacity + " exceeds the largest size class");
+    }
+
+    private int sizeClassOf(ByteBuffer buffer) {
+        for (int i = 0; i < SIZE_CLASSES; ++i) {
+            if (sizeClasses[i].capacity == buffer.capacity()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class SizeClass {
+        final int capacity;
+        // the most retained across the shared queue and the threads' caches
+        final int maxIdle;
+        final ConcurrentLinkedQueue<ByteBufferInstance> queue = new ConcurrentLinkedQueue<>();
+        // the number in the shared queue and the threads' caches, tracked separately since the queue's
+        // size() is linear
+        final AtomicInteger idle = new AtomicInteger();
+
+        SizeClass(int capacity, int maxIdle) {
+            this.capacity = capacity;
+            this.maxIdle = maxIdle;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package me.itzg.utils.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Computes how many bytes a range of decoded chars occupied in the original content, which is what
+ * allows line positions to be reported as exact byte offsets for variable-width charsets.
+ * <p>Chars that the decoder substituted for malformed or unmappable input are registered via
+ * {@link #correct(int, int)}, since the substitute's encoded length differs from that of the bytes it
+ * replaced.</p>
+ */
+class EncodedLengthCounter {
+    private final int fixedWidth;
+    private final boolean utf8;
+    private final CharsetEncoder encoder;
+    private ByteBuffer scratch;
+
+    private int[] correctionIndexes = new int[8];
+    private int[] correctionDeltas = new int[8];
+    private int corrections;
+
+    EncodedLengthCounter(Charset charset) {
+        utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (charset.equals(StandardCharsets.UTF_16) || charset.equals(StandardCharsets.UTF_16BE) ||
+                charset.equals(StandardCharsets.UTF_16LE)) {
+            // any byte order mark is accounted for separately since it doesn't decode into a char
+            fixedWidth = 2;
+            encoder = null;
+        }
+        else if (utf8) {
+            fixedWidth = 0;
+            encoder = null;
+        }
+        else {
+            final CharsetEncoder charsetEncoder = charset.newEncoder();
+            if (charsetEncoder.maxBytesPerChar() == 1.0f) {
+                fixedWidth = 1;
+                encoder = null;
+            }
+            else {
+                fixedWidth = 0;
+                encoder = charsetEncoder
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+        }
+    }
+
+    /**
+     * @param chars the decoded content, which is accessed with absolute indices only
+     * @param start the index of the first char
+     * @param end the index after the last char
+     * @return the number of bytes the given chars were decoded from
+     */
+    int of(CharBuffer chars, int start, int end) {
+        int length;
+        if (fixedWidth != 0) {
+            length = (end - start) * fixedWidth;
+        }
+        else if (utf8) {
+            length = utf8Length(chars, start, end);
+        }
+        else {
+            length = encodedLength(chars, start, end);
+        }
+
+        for (int i = 0; i < corrections; ++i) {
+            if (correctionIndexes[i] >= start && correctionIndexes[i] < end) {
+                length += correctionDeltas[i];
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Registers a char substituted by the decoder
+     *
+     * @param charIndex the index of the substituted char
+     * @param byteDelta the number of bytes actually consumed minus the encoded length of the substitute
+     */
+    void correct(int charIndex, int byteDelta) {
+        if (corrections == correctionIndexes.length) {
+            correctionIndexes = Arrays.copyOf(correctionIndexes, corrections * 2);
+            correctionDeltas = Arrays.copyOf(correctionDeltas, corrections * 2);
+        }
+        correctionIndexes[corrections] = charIndex;
+        correctionDeltas[corrections] = byteDelta;
+        ++corrections;
+    }
+
+    /**
+     * Adjusts the registered corrections when the chars from the given index are carried over to the
+     * start of another buffer.
+     */
+    void shift(int from) {
+        int retained = 0;
+        for (int i = 0; i < corrections; ++i) {
+            if (correctionIndexes[i] >= from) {
+                correctionIndexes[retained] = correctionIndexes[i] - from;
+                correctionDeltas[retained] = correctionDeltas[i];
+                ++retained;
+            }
+        }
+        corrections = retained;
+    }
+
+    private static int utf8Length(CharBuffer chars, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; ++i) {
+            final char c = chars.get(i);
+            if (c < 0x80) {
+                length += 1;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars.get(i + 1))) {
+                length += 4;
+                ++i;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private int encodedLength(CharBuffer chars, int start, int end) {
+        if (scratch == null) {
+            scratch = ByteBuffer.allocate(256);
+        }
+        final CharBuffer source = chars.duplicate();
+        source.limit(end).position(start);
+
+        encoder.reset();
+        int length = 0;
+        CoderResult result;
+        do {
+            scratch.clear();
+            result = encoder.encode(source, scratch, true);
+            length += scratch.position();
+        } while (result.isOverflow());
+        do {
+            scratch.clear();
+            result = encoder.flush(scratch);
+            length += scratch.position();
+        } while (result.isOverflow());
+
+        return length;
+    }
+}
@@ -0,0 +1,532 @@
+package me.itzg.utils.io;
+
+import java.io.IOException;
+
+/**
+ * Splits delimited records, such as CSV and TSV lines, into fields without allocating. A single instance
+ * is reset to each line and then acts as a cursor over its fields: each call to {@link #next()} advances
+ * to the next field, which is described by its offsets within the line.
+ * <p>A field starting with the quote char is quoted, within which separators are literal and a doubled
+ * quote stands for one quote. If an escape char is configured, it makes the char following it literal
+ * both within and outside of quotes. Fields needing either of those to be undone are flagged by
+ * {@link #isEscaped()} and can be read with {@link #appendTo(StringBuilder)} or {@link #toString()}.
+ * Lines are tokenized independently, so quoted fields cannot span lines; a quote left open runs to the end
+ * of the line.</p>
+ * <p>The static {@link #parseLong(CharSequence, int, int)} and {@link #parseDouble(CharSequence, int, int)}
+ * convert a slice of any {@link CharSequence} without first creating a {@link String}.</p>
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class FieldTokenizer {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // the most significant digits for which a long mantissa is exactly representable by a double
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private final char separator;
+    private char quote = '"';
+    private char escape;
+
+    private CharSequence line;
+    private int lineLength;
+    private int index;
+    // where the next field starts or past the line length once all have been given
+    private int next;
+
+    private int rawStart;
+    private int rawEnd;
+    private int start;
+    private int end;
+    private boolean quoted;
+    private boolean escaped;
+
+    // reused to unescape fields for parsing
+    private final StringBuilder unescaped = new StringBuilder();
+
+    /**
+     * Creates a tokenizer that recognizes double quotes and no escape char.
+     *
+     * @param separator the char between fields, such as a comma or tab
+     */
+    public FieldTokenizer(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * @return a tokenizer for comma separated values as described by RFC 4180
+     */
+    public static FieldTokenizer csv() {
+        return new FieldTokenizer(',');
+    }
+
+    /**
+     * @return a tokenizer for tab separated values, which are not quoted but may contain backslash escapes
+     */
+    public static FieldTokenizer tsv() {
+        final FieldTokenizer tokenizer = new FieldTokenizer('\t');
+        tokenizer.setQuote('\0');
+        tokenizer.setEscape('\\');
+        return tokenizer;
+    }
+
+    public char getSeparator() {
+        return separator;
+    }
+
+    public char getQuote() {
+        return quote;
+    }
+
+    /**
+     * @param quote the char that quotes a field when it is the first in the field or <code>'\0'</code>
+     *              to disable quoting
+     */
+    public void setQuote(char quote) {
+        if (quote != '\0' && (quote == separator || quote == escape)) {
+            throw new IllegalArgumentException("The quote must differ from the separator and escape");
+        }
+        this.quote = quote;
+    }
+
+    public char getEscape() {
+        return escape;
+    }
+
+    /**
+     * @param escape the char that makes the following char literal or <code>'\0'</code>, the default, for
+     *               none. Doubled quotes are recognized regardless.
+     */
+    public void setEscape(char escape) {
+        if (escape != '\0' && (escape == separator || escape == quote)) {
+            throw new IllegalArgumentException("The escape must differ from the separator and quote");
+        }
+        this.escape = escape;
+    }
+
+    /**
+     * Positions the cursor before the first field of the given line.
+     *
+     * @param line the record to tokenize, which must not change until tokenizing is done
+     * @return this tokenizer for convenience
+     */
+    public FieldTokenizer reset(CharSequence line) {
+        this.line = line;
+        lineLength = line.length();
+        index = -1;
+        next = 0;
+        return this;
+    }
+
+    /**
+     * Advances to the next field. A line always has at least one field, even if empty, and a trailing
+     * separator is followed by an empty field.
+     *
+     * @return true if positioned at another field or false if there are no more
+     */
+    public boolean next() {
+        if (next > lineLength) {
+            return false;
+        }
+        ++index;
+        rawStart = next;
+        quoted = false;
+        escaped = false;
+        int closingQuote = -1;
+
+        int i = rawStart;
+        boolean inQuotes = false;
+        if (quote != '\0' && i < lineLength && line.charAt(i) == quote) {
+            quoted = true;
+            inQuotes = true;
+            ++i;
+        }
+        while (i < lineLength) {
+            final char c = line.charAt(i);
+            if (escape != '\0' && c == escape && i + 1 < lineLength) {
+                escaped = true;
+                i += 2;
+            }
+            else if (inQuotes) {
+                if (c == quote) {
+                    if (i + 1 < lineLength && line.charAt(i + 1) == quote) {
+                        escaped = true;
+                        i += 2;
+                        continue;
+                    }
+                    inQuotes = false;
+                    closingQuote = i;
+                }
+                ++i;
+            }
+            else if (c == separator) {
+                break;
+            }
+            else {
+                if (quoted) {
+                    // content after the closing quote is kept but has to be unescaped to drop the quotes
+                    escaped = true;
+                }
+                ++i;
+            }
+        }
+        rawEnd = i;
+        next = i + 1;
+
+        if (escaped) {
+            start = rawStart;
+            end = rawEnd;
+        }
+        else if (quoted) {
+            start = rawStart + 1;
+            end = closingQuote != -1 ? closingQuote : rawEnd;
+        }
+        else {
+            start = rawStart;
+            end = rawEnd;
+        }
+        return true;
+    }
+
+    /**
+     * @return the line being tokenized
+     */
+    public CharSequence getLine() {
+        return line;
+    }
+
+    /**
+     * @return the zero-based index of the current field within the line
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the offset within the line of the start of the current field's content, which excludes
+     * surrounding quotes unless {@link #isEscaped()}
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the offset within the line just past the current field's content
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true if the current field started with the quote char
+     */
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    /**
+     * @return true if the current field contains escapes or doubled quotes, in which case its offsets
+     * span the raw field, quotes included, and its content must be read with {@link #appendTo(StringBuilder)}
+     */
+    public boolean isEscaped() {
+        return escaped;
+    }
+
+    /**
+     * @return true if the current field has no content
+     */
+    public boolean isEmpty() {
+        return end == start;
+    }
+
+    /**
+     * @param expected the content to compare against
+     * @return true if the current field's content, once unescaped, equals the given content
+     */
+    public boolean contentEquals(CharSequence expected) {
+        final CharSequence content = content();
+        final int offset = escaped ? 0 : start;
+        final int length = escaped ? content.length() : end - start;
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (content.charAt(offset + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the content of the current field with any quoting and escapes undone.
+     *
+     * @return the given builder for convenience
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        if (!escaped) {
+            return out.append(line, start, end);
+        }
+        try {
+            return (StringBuilder) appendUnescaped(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("StringBuilder should not throw", e);
+        }
+    }
+
+    /**
+     * Appends the content of the current field with any quoting and escapes undone.
+     *
+     * @return the given appendable for convenience
+     */
+    public Appendable appendTo(Appendable out) throws IOException {
+        return escaped ? appendUnescaped(out) : out.append(line, start, end);
+    }
+
+    /**
+     * @return the current field parsed as a decimal long
+     * @throws NumberFormatException if the field is not a long
+     */
+    public long parseLong() {
+        return escaped ? parseLong(content(), 0, unescaped.length()) : parseLong(line, start, end);
+    }
+
+    /**
+     * @return the current field parsed as a double
+     * @throws NumberFormatException if the field is not a double
+     */
+    public double parseDouble() {
+        return escaped ? parseDouble(content(), 0, unescaped.length()) : parseDouble(line, start, end);
+    }
+
+    /**
+     * @return the content of the current field with any quoting and escapes undone
+     */
+    @Override
+    public String toString() {
+        return escaped ? content().toString() : line.subSequence(start, end).toString();
+    }
+
+    /**
+     * @return the line when the field is not escaped, otherwise the reused builder holding its content
+     */
+    private CharSequence content() {
+        if (!escaped) {
+            return line;
+        }
+        unescaped.setLength(0);
+        try {
+            appendUnescaped(unescaped);
+        } catch (IOException e) {
+            throw new IllegalStateException("StringBuilder should not throw", e);
+        }
+        return unescaped;
+    }
+
+    /**
+     * Mirrors the rules of {@link #next()} over the raw field
+     */
+    private Appendable appendUnescaped(Appendable out) throws IOException {
+        int i = rawStart;
+        boolean inQuotes = false;
+        if (quoted) {
+            inQuotes = true;
+            ++i;
+        }
+        while (i < rawEnd) {
+            final char c = line.charAt(i);
+            if (escape != '\0' && c == escape && i + 1 < rawEnd) {
+                out.append(line.charAt(i + 1));
+                i += 2;
+            }
+            else if (inQuotes && c == quote) {
+                if (i + 1 < rawEnd && line.charAt(i + 1) == quote) {
+                    out.append(quote);
+                    i += 2;
+                }
+                else {
+                    inQuotes = false;
+                    ++i;
+                }
+            }
+            else {
+                out.append(c);
+                ++i;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Parses a slice as a signed decimal long, accepting exactly what {@link Long#parseLong(String)} does.
+     *
+     * @param seq the chars containing the slice
+     * @param start the index of the first char of the slice
+     * @param end the index just past the slice
+     * @throws NumberFormatException if the slice is not a long
+     */
+    public static long parseLong(CharSequence seq, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty value");
+        }
+        int i = start;
+        boolean negative = false;
+        final char first = seq.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                throw numberFormat(seq, start, end);
+            }
+        }
+
+        // accumulates negatively since the magnitude of Long.MIN_VALUE exceeds that of MAX_VALUE
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < end; ++i) {
+            final int digit = seq.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                throw numberFormat(seq, start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormat(seq, start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses a slice as a double, accepting exactly what {@link Double#parseDouble(String)} does. Plain
+     * decimals with up to fifteen significant digits and small exponents, which covers typical metrics, are
+     * converted directly; anything else falls back to {@link Double#parseDouble(String)}.
+     *
+     * @param seq the chars containing the slice
+     * @param start the index of the first char of the slice
+     * @param end the index just past the slice
+     * @throws NumberFormatException if the slice is not a double
+     */
+    public static double parseDouble(CharSequence seq, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (seq.charAt(i) == '-' || seq.charAt(i) == '+')) {
+            negative = seq.charAt(i) == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean sawDigit = false;
+        boolean inFraction = false;
+        for (; i < end; ++i) {
+            final char c = seq.charAt(i);
+            if (c == '.' && !inFraction) {
+                inFraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            sawDigit = true;
+            if (mantissa != 0 || c != '0') {
+                if (++significantDigits > MAX_EXACT_DIGITS) {
+                    return parseDoubleSlowly(seq, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            if (inFraction) {
+                --exponent;
+            }
+        }
+        if (!sawDigit) {
+            return parseDoubleSlowly(seq, start, end);
+        }
+
+        if (i < end && (seq.charAt(i) == 'e' || seq.charAt(i) == 'E')) {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < end && (seq.charAt(i) == '-' || seq.charAt(i) == '+')) {
+                negativeExponent = seq.charAt(i) == '-';
+                ++i;
+            }
+            int explicit = 0;
+            final int digitsStart = i;
+            for (; i < end; ++i) {
+                final int digit = seq.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || explicit > 1000) {
+                    break;
+                }
+                explicit = explicit * 10 + digit;
+            }
+            if (i == digitsStart) {
+                return parseDoubleSlowly(seq, start, end);
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (i != end) {
+            return parseDoubleSlowly(seq, start, end);
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (exponent < -POWERS_OF_TEN.length + 1 || exponent > POWERS_OF_TEN.length - 1) {
+            return parseDoubleSlowly(seq, start, end);
+        }
+        // both operands are exact, so the single rounding of the operation gives the correctly rounded result
+        final double value = exponent >= 0 ?
+                mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlowly(CharSequence seq, int start, int end) {
+        return Double.parseDouble(seq.subSequence(start, end).toString());
+    }
+
+    private static NumberFormatException numberFormat(CharSequence seq, int start, int end) {
+        return new NumberFormatException("For input string: \"" + seq.subSequence(start, end) + "\"");
+    }
+
+    /**
+     * Adapts this tokenizer to a {@link ChannelLineScanner} so that each scanned line is observed as a
+     * record. The lines may be lazily decoded, since the tokenizer only reads them during the callback.
+     *
+     * @param observer receives this tokenizer reset to each line
+     * @return an observer to pass to the scanner
+     */
+    public ChannelLineScanner.Observer asLineObserver(final RecordObserver observer) {
+        return new ChannelLineScanner.Observer() {
+            @Override
+            public boolean observeLine(CharSequence line, long position) {
+                return observer.observeRecord(reset(line), position);
+            }
+
+            @Override
+            public void observeEndOfFile(long position) {
+                observer.observeEndOfFile(position);
+            }
+        };
+    }
+
+    public interface RecordObserver {
+
+        /**
+         * This method gets invoked after each line has been scanned.
+         * <p>NOTE: if the implementation returns <code>false</code>, then
+         * {@link #observeEndOfFile(long)} will not be invoked.</p>
+         *
+         * @param fields the tokenizer positioned before the first field of the record, which must not be
+         *               retained beyond this call
+         * @param position the byte-position in the file of the start of this record
+         * @return true to continue scanning or false to stop after this record
+         */
+        boolean observeRecord(FieldTokenizer fields, long position);
+
+        void observeEndOfFile(long position);
+    }
+}
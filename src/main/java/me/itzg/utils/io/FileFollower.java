@@ -0,0 +1,170 @@
+package me.itzg.utils.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Follows a growing file, such as an application log, in the manner of <code>tail -f</code>. Each poll
+ * resumes from a {@link FollowCheckpoint}, so it only reads the content appended since the previous poll.
+ * <p>A line is only given to the observer once its delimiter has been written. If the file is truncated or
+ * replaced by rotation, which is detected by its size shrinking or its file key (device and inode)
+ * changing, then following restarts from the beginning of the new content. Anything written to the old
+ * file after the previous poll is not read, nor is a partial line that was trailing in it.</p>
+ * <p>{@link ChannelLineScanner.Observer#observeEndOfFile(long)} is invoked at the end of each poll that
+ * read new content, with the offset up to which the file has been read.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class FileFollower {
+    private final Path file;
+    private final ChannelLineScanner scanner;
+    private FollowCheckpoint checkpoint;
+
+    private long minPollInterval = 100;
+    private long maxPollInterval = 5000;
+
+    public FileFollower(Path file, ChannelLineScanner scanner) {
+        this(file, scanner, new FollowCheckpoint(0, null));
+    }
+
+    /**
+     * @param checkpoint a checkpoint previously obtained from {@link #getCheckpoint()}
+     */
+    public FileFollower(Path file, ChannelLineScanner scanner, FollowCheckpoint checkpoint) {
+        this.file = file;
+        this.scanner = scanner;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the state after the most recent poll, which can be persisted to later resume following
+     */
+    public FollowCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Performs a single poll of the file, giving any newly completed lines to the observer.
+     *
+     * @return false if the observer asked to stop following
+     */
+    public boolean poll(ChannelLineScanner.Observer observer) throws IOException {
+        try {
+            // the key can't be read from an open channel, so it is read on either side of opening the file
+            final String fileKey = fileKey();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (fileKey != null && !fileKey.equals(fileKey())) {
+                    // rotated while opening, so the channel may be of either file, so try again next time
+                    return true;
+                }
+                final long size = channel.size();
+
+                long position = checkpoint.getPosition();
+                long readPosition = checkpoint.getReadPosition();
+                if ((checkpoint.getFileKey() != null && !checkpoint.getFileKey().equals(fileKey))
+                        || size < readPosition) {
+                    // rotated or truncated
+                    position = 0;
+                    readPosition = 0;
+                }
+
+                if (size == readPosition) {
+                    // nothing new, not even the rest of a partial line
+                    checkpoint = new FollowCheckpoint(position, fileKey, readPosition);
+                    return true;
+                }
+
+                channel.position(position);
+                final StopTracker tracker = new StopTracker(observer);
+                final long nextPosition = scanner.scanFrom(channel, position, tracker, false);
+                checkpoint = new FollowCheckpoint(nextPosition, fileKey,
+                        tracker.stopped ? nextPosition : tracker.endOfFile);
+                return !tracker.stopped;
+            }
+        } catch (NoSuchFileException e) {
+            // rotated away and not yet re-created, so try again next time
+            return true;
+        }
+    }
+
+    private String fileKey() throws IOException {
+        final Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        return key != null ? key.toString() : null;
+    }
+
+    /**
+     * Polls the file until the observer asks to stop or the current thread is interrupted. Polling
+     * continues immediately while new content is being found; otherwise the interval between polls
+     * doubles from {@link #getMinPollInterval()} up to {@link #getMaxPollInterval()}.
+     */
+    public void follow(ChannelLineScanner.Observer observer) throws IOException, InterruptedException {
+        long interval = minPollInterval;
+        while (true) {
+            final FollowCheckpoint before = checkpoint;
+            if (!poll(observer)) {
+                return;
+            }
+
+            if (!checkpoint.equals(before)) {
+                interval = minPollInterval;
+            }
+            else {
+                Thread.sleep(interval);
+                interval = Math.min(interval * 2, maxPollInterval);
+            }
+        }
+    }
+
+    public long getMinPollInterval() {
+        return minPollInterval;
+    }
+
+    /**
+     * @param minPollInterval milliseconds between polls once new content stops arriving
+     */
+    public void setMinPollInterval(long minPollInterval) {
+        this.minPollInterval = minPollInterval;
+    }
+
+    public long getMaxPollInterval() {
+        return maxPollInterval;
+    }
+
+    /**
+     * @param maxPollInterval the most milliseconds between polls of an idle file
+     */
+    public void setMaxPollInterval(long maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    private static class StopTracker implements ChannelLineScanner.Observer {
+        private final ChannelLineScanner.Observer delegate;
+        boolean stopped;
+        long endOfFile;
+
+        StopTracker(ChannelLineScanner.Observer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean observeLine(CharSequence line, long position) {
+            if (!delegate.observeLine(line, position)) {
+                stopped = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void observeEndOfFile(long position) {
+            endOfFile = position;
+            delegate.observeEndOfFile(position);
+        }
+    }
+}
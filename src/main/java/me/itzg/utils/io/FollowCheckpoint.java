@@ -0,0 +1,92 @@
+package me.itzg.utils.io;
+
+import java.io.Serializable;
+
+/**
+ * The resumable state of a {@link FileFollower}, which can be persisted between runs in order to pick up
+ * exactly where the previous one left off.
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class FollowCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long position;
+    private final String fileKey;
+    private final long readPosition;
+
+    /**
+     * @param position the byte offset of the first line not yet observed
+     * @param fileKey identifies the file that was being followed, such as its device and inode, or null
+     *                if not known
+     */
+    public FollowCheckpoint(long position, String fileKey) {
+        this(position, fileKey, position);
+    }
+
+    /**
+     * @param position the byte offset of the first line not yet observed
+     * @param fileKey identifies the file that was being followed, such as its device and inode, or null
+     *                if not known
+     * @param readPosition the byte offset up to which the file has been read, which is beyond
+     *                     <code>position</code> when a partial line was trailing
+     */
+    public FollowCheckpoint(long position, String fileKey, long readPosition) {
+        this.position = position;
+        this.fileKey = fileKey;
+        this.readPosition = readPosition;
+    }
+
+    /**
+     * @return the byte offset of the first line not yet observed. Any partial line that was trailing at
+     * the previous poll starts here and is re-read once it is complete.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    /**
+     * @return the byte offset up to which the file has been read, so that a poll can tell whether anything
+     * has been appended since, including to a partial line
+     */
+    public long getReadPosition() {
+        // a checkpoint serialized before this was tracked has zero
+        return Math.max(position, readPosition);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        FollowCheckpoint that = (FollowCheckpoint) o;
+
+        if (position != that.position) return false;
+        if (readPosition != that.readPosition) return false;
+        if (fileKey != null ? !fileKey.equals(that.fileKey) : that.fileKey != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (position ^ (position >>> 32));
+        result = 31 * result + (fileKey != null ? fileKey.hashCode() : 0);
+        result = 31 * result + (int) (readPosition ^ (readPosition >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FollowCheckpoint{" +
+                "position=" + position +
+                ", fileKey='" + fileKey + '\'' +
+                ", readPosition=" + readPosition +
+                '}';
+    }
+}
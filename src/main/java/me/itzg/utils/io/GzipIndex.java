@@ -0,0 +1,172 @@
+package me.itzg.utils.io;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The places in a gzip file from which decompression, and so scanning, can start without decompressing
+ * everything before them, as built by {@link ChannelLineScanner#scanGzip(java.nio.channels.ReadableByteChannel, ChannelLineScanner.Observer)}.
+ * <p>Each checkpoint is the start of a gzip member, since Java's {@link java.util.zip.Inflater} can only
+ * start inflating at the start of a deflate stream. Files written as many independent members, such as
+ * by <code>bgzip</code> or <code>pigz --independent</code>, therefore index finely, whereas a file
+ * written as a single member only has the checkpoint at its start.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class GzipIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long checkpointInterval;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    // the first checkpoint whose first line start is not yet known while the index is built
+    private transient int alignmentCursor;
+
+    /**
+     * @param checkpointInterval the least number of uncompressed bytes between checkpoints, which bounds
+     *                           the size of the index when members are small
+     */
+    public GzipIndex(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return the checkpoints in file order
+     */
+    public synchronized List<Checkpoint> getCheckpoints() {
+        return Collections.unmodifiableList(new ArrayList<>(checkpoints));
+    }
+
+    /**
+     * @return the last checkpoint at or before the given uncompressed offset, from which a scan would
+     * reach that offset soonest
+     */
+    public synchronized Checkpoint floor(long uncompressedOffset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (checkpoints.get(mid).uncompressedOffset <= uncompressedOffset) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    /**
+     * Called at the start of each member, which may be on a read-ahead thread
+     */
+    synchronized void memberStarted(long compressedOffset, long uncompressedOffset) {
+        if (checkpoints.isEmpty() ||
+                uncompressedOffset - checkpoints.get(checkpoints.size() - 1).uncompressedOffset >= checkpointInterval) {
+            // the start of the content is always the start of a line, otherwise it's found as lines are observed
+            checkpoints.add(new Checkpoint(compressedOffset, uncompressedOffset, uncompressedOffset == 0 ? 0 : -1));
+        }
+    }
+
+    /**
+     * Called with the position of each line in order, which is never ahead of the members started
+     */
+    synchronized void lineObserved(long position) {
+        resolveUpTo(position);
+    }
+
+    /**
+     * Called once the end of the content is reached, where any checkpoint without a complete line after it
+     * resolves to
+     */
+    synchronized void endObserved(long position) {
+        resolveUpTo(position);
+    }
+
+    private void resolveUpTo(long position) {
+        while (alignmentCursor < checkpoints.size()) {
+            final Checkpoint checkpoint = checkpoints.get(alignmentCursor);
+            if (checkpoint.firstLineStart == -1) {
+                if (checkpoint.uncompressedOffset > position) {
+                    break;
+                }
+                checkpoints.set(alignmentCursor,
+                        new Checkpoint(checkpoint.compressedOffset, checkpoint.uncompressedOffset, position));
+            }
+            ++alignmentCursor;
+        }
+    }
+
+    public static class Checkpoint implements Serializable {
+        private static final long serialVersionUID = 2L;
+
+        private final long compressedOffset;
+        private final long uncompressedOffset;
+        private final long firstLineStart;
+
+        public Checkpoint(long compressedOffset, long uncompressedOffset, long firstLineStart) {
+            this.compressedOffset = compressedOffset;
+            this.uncompressedOffset = uncompressedOffset;
+            this.firstLineStart = firstLineStart;
+        }
+
+        /**
+         * @return the offset in the gzip file of the start of the member
+         */
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        /**
+         * @return the offset in the uncompressed content that the member starts at
+         */
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        /**
+         * @return the offset in the uncompressed content of the first line that starts at or after the
+         * checkpoint, up to which a scan from here skips the remainder of the line in progress. It is the
+         * end of the content if no line starts after the checkpoint, or -1 while the index is still being
+         * built and no such line has been reached.
+         */
+        public long getFirstLineStart() {
+            return firstLineStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Checkpoint that = (Checkpoint) o;
+
+            if (compressedOffset != that.compressedOffset) return false;
+            if (uncompressedOffset != that.uncompressedOffset) return false;
+            return firstLineStart == that.firstLineStart;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (compressedOffset ^ (compressedOffset >>> 32));
+            result = 31 * result + (int) (uncompressedOffset ^ (uncompressedOffset >>> 32));
+            result = 31 * result + (int) (firstLineStart ^ (firstLineStart >>> 32));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint{" +
+                    "compressedOffset=" + compressedOffset +
+                    ", uncompressedOffset=" + uncompressedOffset +
+                    ", firstLineStart=" + firstLineStart +
+                    '}';
+        }
+    }
+}
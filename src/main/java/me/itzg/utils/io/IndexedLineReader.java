@@ -0,0 +1,176 @@
+package me.itzg.utils.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Provides random access to the lines of a file by way of an index created by
+ * {@link LineOffsetIndex#build(java.nio.file.Path, java.nio.file.Path, ChannelLineScanner)}. Locating any
+ * line is a constant time lookup in the memory-mapped index followed by a positional read of just that
+ * line's bytes.
+ * <p>Reads are positional, so a single instance may be used by concurrent threads.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class IndexedLineReader implements Closeable {
+    // lines are read in batches of up to this many bytes, unless a single line is larger
+    private static final int BATCH_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final LongBuffer offsets;
+    private final long lineCount;
+    private final Charset charset;
+    private final ByteDelimiter byteDelimiter;
+
+    /**
+     * @param file the file that was indexed
+     * @param indexFile the index previously built for it
+     * @param scanner provides the same charset and delimiters that were used to build the index
+     * @throws IOException if the index is invalid or no longer matches the size of the file
+     * @throws IllegalArgumentException if the scanner's charset and delimiters do not allow lines to be
+     * located by their bytes, which requires ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters
+     */
+    public IndexedLineReader(Path file, Path indexFile, ChannelLineScanner scanner) throws IOException {
+        if (!scanner.isByteScannable()) {
+            throw new IllegalArgumentException(
+                    "Indexed lines require ISO-8859-1, US-ASCII or UTF-8 and ASCII delimiters");
+        }
+        charset = scanner.getCharset();
+        byteDelimiter = ByteDelimiter.encode(scanner.getDelimiters(), charset);
+
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(LineOffsetIndex.HEADER_SIZE);
+            readFully(index, header, 0);
+            if (header.getInt() != LineOffsetIndex.MAGIC || header.getInt() != LineOffsetIndex.VERSION) {
+                throw new IOException("Not a supported line index: " + indexFile);
+            }
+            final long indexedSize = header.getLong();
+            lineCount = header.getLong();
+            if ((lineCount + 1) * 8 > Integer.MAX_VALUE) {
+                throw new IOException("Too many lines to map the index: " + lineCount);
+            }
+
+            // the mapping remains valid after the channel is closed
+            offsets = index.map(FileChannel.MapMode.READ_ONLY, LineOffsetIndex.HEADER_SIZE, (lineCount + 1) * 8)
+                    .asLongBuffer();
+
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            if (channel.size() != indexedSize) {
+                channel.close();
+                throw new IOException("Index is stale since the size of " + file + " changed from " + indexedSize);
+            }
+        }
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the byte offset of the start of the given line
+     */
+    public long getLinePosition(long lineNumber) {
+        checkLineNumber(lineNumber);
+        return offsets.get((int) lineNumber);
+    }
+
+    /**
+     * @param lineNumber the zero-based line number
+     * @return the content of the line excluding its delimiter
+     */
+    public String readLine(long lineNumber) throws IOException {
+        checkLineNumber(lineNumber);
+        final long start = offsets.get((int) lineNumber);
+        final long end = offsets.get((int) lineNumber + 1);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(checkedLength(start, end));
+        readFully(channel, buffer, start);
+        return new ByteSequence(buffer, 0, lineEnd(buffer, 0, buffer.limit()), charset).toString();
+    }
+
+    /**
+     * Reads a range of lines with as few positional reads as possible and delivers each to the observer as
+     * a {@link ByteSequence}, which remains valid after the callback.
+     *
+     * @param fromLine the first zero-based line number to read
+     * @param toLine the line number after the last one to read
+     * @param observer receives the lines along with their byte offsets. Its
+     *                 {@link ChannelLineScanner.Observer#observeEndOfFile(long)} is invoked with the offset
+     *                 just past the last line read, unless it stopped the reading early.
+     */
+    public void readLines(long fromLine, long toLine, ChannelLineScanner.Observer observer) throws IOException {
+        if (fromLine < 0 || toLine > lineCount || fromLine > toLine) {
+            throw new IndexOutOfBoundsException("Line range " + fromLine + ".." + toLine +
+                    " is outside of 0.." + lineCount);
+        }
+
+        long line = fromLine;
+        while (line < toLine) {
+            final long batchStart = offsets.get((int) line);
+            // take as many lines as fit in a batch, but always at least one
+            long batchEndLine = line + 1;
+            while (batchEndLine < toLine && offsets.get((int) batchEndLine + 1) - batchStart <= BATCH_SIZE) {
+                ++batchEndLine;
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(checkedLength(batchStart,
+                    offsets.get((int) batchEndLine)));
+            readFully(channel, buffer, batchStart);
+
+            for (; line < batchEndLine; ++line) {
+                final int start = (int) (offsets.get((int) line) - batchStart);
+                final int end = (int) (offsets.get((int) line + 1) - batchStart);
+                if (!observer.observeLine(new ByteSequence(buffer, start, lineEnd(buffer, start, end), charset),
+                        batchStart + start)) {
+                    return;
+                }
+            }
+        }
+
+        observer.observeEndOfFile(offsets.get((int) toLine));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the end of the line's content, which excludes the delimiter unless it's the last line of a
+     * file that didn't end with a delimiter
+     */
+    private int lineEnd(ByteBuffer buffer, int start, int end) {
+        return end - byteDelimiter.suffixLength(buffer, start, end);
+    }
+
+    private void checkLineNumber(long lineNumber) {
+        if (lineNumber < 0 || lineNumber >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + lineNumber + " is outside of 0.." + lineCount);
+        }
+    }
+
+    private static int checkedLength(long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Content at " + start + " is too large to read at once");
+        }
+        return (int) (end - start);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int amountRead = channel.read(buffer, position + buffer.position());
+            if (amountRead == -1) {
+                throw new EOFException("Reached end of file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,303 @@
+package me.itzg.utils.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses gzip or zlib content read from another channel. Unlike wrapping a
+ * {@link java.util.zip.GZIPInputStream} with {@link java.nio.channels.Channels#newChannel(java.io.InputStream)},
+ * it inflates straight into the destination buffer when that has an array, and it tracks the compressed and
+ * uncompressed positions.
+ * <p>Gzip content may consist of several members, as produced by concatenating gzip files, each of which is
+ * verified against its trailer.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class InflatingChannel implements ReadableByteChannel {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final ReadableByteChannel source;
+    private final boolean gzip;
+    private final Inflater inflater;
+    private final CRC32 crc = new CRC32();
+    private final GzipIndex index;
+
+    private final byte[] input;
+    private int inputPosition;
+    private int inputLimit;
+    // for destinations without an array
+    private byte[] output;
+
+    private long compressedPosition;
+    private long uncompressedPosition;
+    private long memberUncompressedStart;
+    private boolean atMemberStart;
+    private boolean finished;
+
+    private InflatingChannel(ReadableByteChannel source, boolean gzip, long compressedPosition,
+                             long uncompressedPosition, GzipIndex index, int inputBufferSize) {
+        this.source = source;
+        this.gzip = gzip;
+        // gzip wraps raw deflate whereas the inflater handles the zlib wrapper itself
+        this.inflater = new Inflater(gzip);
+        this.compressedPosition = compressedPosition;
+        this.uncompressedPosition = uncompressedPosition;
+        this.index = index;
+        this.input = new byte[inputBufferSize];
+        this.atMemberStart = gzip;
+    }
+
+    /**
+     * @param source positioned at the start of a gzip member
+     * @return a channel of the decompressed content
+     */
+    public static InflatingChannel gzip(ReadableByteChannel source) {
+        return new InflatingChannel(source, true, 0, 0, null, 8192);
+    }
+
+    /**
+     * @param source positioned at the start of a gzip member
+     * @param compressedPosition the position of the source in the gzip file
+     * @param uncompressedPosition the position in the decompressed content that the member starts at
+     * @param index if not null, receives the start of each member as a checkpoint
+     * @param inputBufferSize the size of the buffer of compressed content
+     * @return a channel of the decompressed content
+     */
+    public static InflatingChannel gzip(ReadableByteChannel source, long compressedPosition, long uncompressedPosition,
+                                        GzipIndex index, int inputBufferSize) {
+        return new InflatingChannel(source, true, compressedPosition, uncompressedPosition, index, inputBufferSize);
+    }
+
+    /**
+     * @param source positioned at the start of zlib content, such as that of HTTP's deflate content-encoding
+     * @return a channel of the decompressed content
+     */
+    public static InflatingChannel zlib(ReadableByteChannel source) {
+        return new InflatingChannel(source, false, 0, 0, null, 8192);
+    }
+
+    /**
+     * @return the position in the compressed content of the next byte to be inflated
+     */
+    public long getCompressedPosition() {
+        return compressedPosition - (inputLimit - inputPosition);
+    }
+
+    /**
+     * @return the position in the decompressed content of the next byte to be read
+     */
+    public long getUncompressedPosition() {
+        return uncompressedPosition;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (finished) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+
+        while (true) {
+            if (atMemberStart) {
+                if (!readHeader()) {
+                    finished = true;
+                    return -1;
+                }
+                atMemberStart = false;
+            }
+
+            final int inflated = inflate(dst);
+            if (inflated > 0) {
+                uncompressedPosition += inflated;
+                return inflated;
+            }
+
+            if (inflater.finished()) {
+                inputPosition = inputLimit - inflater.getRemaining();
+                if (!gzip) {
+                    finished = true;
+                    return -1;
+                }
+                readTrailer();
+                inflater.reset();
+                crc.reset();
+                atMemberStart = true;
+            }
+            else if (inflater.needsDictionary()) {
+                throw new ZipException("Compressed content requires a preset dictionary");
+            }
+            else if (inflater.needsInput()) {
+                if (!fill()) {
+                    throw new EOFException("Unexpected end of compressed content");
+                }
+            }
+        }
+    }
+
+    private int inflate(ByteBuffer dst) throws IOException {
+        // even without input, the inflater may have output pending from a previous, full destination
+        inflater.setInput(input, inputPosition, inputLimit - inputPosition);
+
+        final byte[] target;
+        final int offset;
+        final int length;
+        if (dst.hasArray()) {
+            target = dst.array();
+            offset = dst.arrayOffset() + dst.position();
+            length = dst.remaining();
+        }
+        else {
+            if (output == null) {
+                output = new byte[input.length];
+            }
+            target = output;
+            offset = 0;
+            length = Math.min(dst.remaining(), output.length);
+        }
+
+        final int inflated;
+        try {
+            inflated = inflater.inflate(target, offset, length);
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        inputPosition = inputLimit - inflater.getRemaining();
+
+        if (inflated > 0) {
+            if (gzip) {
+                crc.update(target, offset, inflated);
+            }
+            if (dst.hasArray()) {
+                dst.position(dst.position() + inflated);
+            }
+            else {
+                dst.put(output, 0, inflated);
+            }
+        }
+        return inflated;
+    }
+
+    /**
+     * @return false if the content ended cleanly before another member
+     */
+    private boolean readHeader() throws IOException {
+        if (inputPosition == inputLimit && !fill()) {
+            return false;
+        }
+        final long memberStart = getCompressedPosition();
+        memberUncompressedStart = uncompressedPosition;
+        if (index != null) {
+            index.memberStarted(memberStart, uncompressedPosition);
+        }
+
+        if (readUnsignedShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readUnsignedByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readUnsignedByte();
+        // modification time, extra flags and operating system
+        skip(6);
+        if ((flags & FEXTRA) != 0) {
+            skip(readUnsignedShort());
+        }
+        if ((flags & FNAME) != 0) {
+            while (readUnsignedByte() != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readUnsignedByte() != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        final long expectedCrc = readUnsignedInt();
+        final long expectedSize = readUnsignedInt();
+        if (expectedCrc != crc.getValue() ||
+                expectedSize != ((uncompressedPosition - memberUncompressedStart) & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    private int readUnsignedByte() throws IOException {
+        if (inputPosition == inputLimit && !fill()) {
+            throw new EOFException("Unexpected end of compressed content");
+        }
+        return input[inputPosition++] & 0xff;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return readUnsignedByte() | (readUnsignedByte() << 8);
+    }
+
+    private long readUnsignedInt() throws IOException {
+        return readUnsignedShort() | ((long) readUnsignedShort() << 16);
+    }
+
+    private void skip(int count) throws IOException {
+        for (int i = 0; i < count; ++i) {
+            readUnsignedByte();
+        }
+    }
+
+    /**
+     * Replaces the fully consumed input with the next from the source
+     *
+     * @return false if the source has ended
+     */
+    private boolean fill() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(input);
+        int amountRead;
+        do {
+            amountRead = source.read(buffer);
+        } while (amountRead == 0);
+        if (amountRead == -1) {
+            inputPosition = inputLimit = 0;
+            return false;
+        }
+        inputPosition = 0;
+        inputLimit = amountRead;
+        compressedPosition += amountRead;
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return source.isOpen();
+    }
+
+    /**
+     * Releases the inflater's native resources and closes the source
+     */
+    @Override
+    public void close() throws IOException {
+        end();
+        source.close();
+    }
+
+    /**
+     * Releases the inflater's native resources without closing the source
+     */
+    void end() {
+        inflater.end();
+    }
+}
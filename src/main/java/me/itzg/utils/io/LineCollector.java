@@ -0,0 +1,42 @@
+package me.itzg.utils.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Retains the lines given to it so that they can later be replayed to another observer, such as when
+ * restoring file order to ranges that were scanned concurrently.
+ */
+class LineCollector implements ChannelLineScanner.Observer {
+    private final List<CharSequence> lines = new ArrayList<>();
+    private long[] positions = new long[64];
+
+    @Override
+    public boolean observeLine(CharSequence line, long position) {
+        final int index = lines.size();
+        if (index == positions.length) {
+            positions = Arrays.copyOf(positions, index * 2);
+        }
+        positions[index] = position;
+        lines.add(line);
+        return true;
+    }
+
+    @Override
+    public void observeEndOfFile(long position) {
+        // not applicable to a range
+    }
+
+    /**
+     * @return false if the observer stopped the replay
+     */
+    boolean replayTo(ChannelLineScanner.Observer observer) {
+        for (int i = 0; i < lines.size(); ++i) {
+            if (!observer.observeLine(lines.get(i), positions[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+package me.itzg.utils.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Tests whether a line contains any of several literal patterns by searching its raw bytes, so that lines
+ * can be discarded without decoding them.
+ * <p>A single pattern is located like a delimiter, skipping eight bytes at a time to candidates for its
+ * first byte. Several patterns are located in one pass with an Aho-Corasick automaton that is fully
+ * expanded into a transition table, so each byte costs one lookup regardless of the number of
+ * patterns.</p>
+ */
+class LineFilter {
+    private static final int ALPHABET = 256;
+
+    // when there is only one pattern
+    private final ByteDelimiter single;
+
+    // indexed by state * ALPHABET + byte
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private LineFilter(byte[][] patterns) {
+        if (patterns.length == 1) {
+            single = new ByteDelimiter(patterns[0]);
+            transitions = null;
+            accepting = null;
+            return;
+        }
+        single = null;
+
+        int maxStates = 1;
+        for (byte[] pattern : patterns) {
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("pattern cannot be empty");
+            }
+            maxStates += pattern.length;
+        }
+        int[] delta = new int[maxStates * ALPHABET];
+        Arrays.fill(delta, -1);
+        final boolean[] accepts = new boolean[maxStates];
+
+        // the trie of the patterns
+        int states = 1;
+        for (byte[] pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern) {
+                final int index = state * ALPHABET + (b & 0xff);
+                if (delta[index] == -1) {
+                    delta[index] = states++;
+                }
+                state = delta[index];
+            }
+            accepts[state] = true;
+        }
+
+        // then breadth-first, since each state's failure state is shallower, fill in the missing transitions
+        // with those of the failure state
+        final int[] failure = new int[states];
+        final int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int b = 0; b < ALPHABET; ++b) {
+            if (delta[b] == -1) {
+                delta[b] = 0;
+            }
+            else {
+                queue[tail++] = delta[b];
+            }
+        }
+        while (head < tail) {
+            final int state = queue[head++];
+            accepts[state] |= accepts[failure[state]];
+            for (int b = 0; b < ALPHABET; ++b) {
+                final int index = state * ALPHABET + b;
+                final int fallback = delta[failure[state] * ALPHABET + b];
+                if (delta[index] == -1) {
+                    delta[index] = fallback;
+                }
+                else {
+                    failure[delta[index]] = fallback;
+                    queue[tail++] = delta[index];
+                }
+            }
+        }
+
+        transitions = Arrays.copyOf(delta, states * ALPHABET);
+        accepting = Arrays.copyOf(accepts, states);
+    }
+
+    static LineFilter encode(String[] patterns, Charset charset) {
+        if (patterns.length == 0) {
+            throw new IllegalArgumentException("At least one pattern is required");
+        }
+        final byte[][] encodedPatterns = new byte[patterns.length][];
+        for (int i = 0; i < patterns.length; ++i) {
+            try {
+                ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(patterns[i]));
+                encodedPatterns[i] = new byte[encoded.remaining()];
+                encoded.get(encodedPatterns[i]);
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException("Pattern cannot be encoded with " + charset, e);
+            }
+        }
+        return new LineFilter(encodedPatterns);
+    }
+
+    /**
+     * @param buffer the buffer holding the line, which is accessed with absolute indices only
+     * @param start the index of the first byte of the line
+     * @param end the index just past the line
+     * @return true if any pattern occurs entirely within the line
+     */
+    boolean matches(ByteBuffer buffer, int start, int end) {
+        if (single != null) {
+            return single.indexIn(buffer, start, end) != -1;
+        }
+        final int[] transitions = this.transitions;
+        final boolean[] accepting = this.accepting;
+        int state = 0;
+        for (int i = start; i < end; ++i) {
+            state = transitions[state * ALPHABET + (buffer.get(i) & 0xff)];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,108 @@
+package me.itzg.utils.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Builds a compact, persistent index of the byte offset of every line in a file so that
+ * {@link IndexedLineReader} can later seek straight to any line without re-scanning.
+ * <p>The index file consists of a header followed by the offsets as a flat array of big-endian longs, one
+ * for the start of each line and a final one for the end of the file. That layout allows the reader to
+ * memory-map the offsets as a {@link java.nio.LongBuffer} for constant time lookups.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class LineOffsetIndex {
+    static final int MAGIC = 0x4c494458; // "LIDX"
+    static final int VERSION = 1;
+    // magic, version, indexed file size, line count
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    private LineOffsetIndex() {
+    }
+
+    /**
+     * Scans the given file with the given scanner and writes the offsets of its lines to the index file,
+     * replacing any existing content. The scanner's charset and delimiters are what determine the lines, so
+     * the same configuration should be used with {@link IndexedLineReader}. Since the lines themselves are
+     * never read, enabling {@link ChannelLineScanner#setLazyDecoding(boolean)} makes building much cheaper.
+     *
+     * @return the number of lines indexed
+     * @throws IllegalArgumentException if the scanner has a line filter, since the index must include every
+     * line for its line numbers to be correct
+     */
+    public static long build(Path file, Path indexFile, ChannelLineScanner scanner) throws IOException {
+        if (scanner.getLineFilter() != null) {
+            throw new IllegalArgumentException("Cannot build a line index with a filtered scanner");
+        }
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final OffsetWriter writer = new OffsetWriter(index);
+            scanner.scan(source, writer);
+            if (writer.failure != null) {
+                throw writer.failure;
+            }
+            writer.flush();
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(writer.endOfFile).putLong(writer.lineCount);
+            header.flip();
+            while (header.hasRemaining()) {
+                index.write(header, header.position());
+            }
+            return writer.lineCount;
+        }
+    }
+
+    private static class OffsetWriter implements ChannelLineScanner.Observer {
+        private final FileChannel index;
+        private final ByteBuffer pending = ByteBuffer.allocate(8192);
+        private long writePosition = HEADER_SIZE;
+        long lineCount;
+        long endOfFile = -1;
+        IOException failure;
+
+        OffsetWriter(FileChannel index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean observeLine(CharSequence line, long position) {
+            ++lineCount;
+            return append(position);
+        }
+
+        @Override
+        public void observeEndOfFile(long position) {
+            endOfFile = position;
+            append(position);
+        }
+
+        private boolean append(long offset) {
+            if (!pending.hasRemaining()) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    failure = e;
+                    return false;
+                }
+            }
+            pending.putLong(offset);
+            return true;
+        }
+
+        void flush() throws IOException {
+            pending.flip();
+            while (pending.hasRemaining()) {
+                writePosition += index.write(pending, writePosition);
+            }
+            pending.clear();
+        }
+    }
+}
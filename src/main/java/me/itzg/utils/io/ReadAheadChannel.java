@@ -0,0 +1,228 @@
+package me.itzg.utils.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads ahead of its consumer on another thread, so that a scan's I/O overlaps with its decoding and
+ * scanning rather than alternating with it.
+ * <p>A fixed number of buffers circulate between the reader, which fills them from the source channel
+ * in order, and the consumer, which copies from them via {@link #read(java.nio.ByteBuffer)}. Once all
+ * of the buffers are filled the reader waits for the consumer to return one, which bounds both the
+ * memory used and how far the reader gets ahead.</p>
+ * <p>Closing this channel stops the reader but leaves the source channel open, with its position
+ * somewhere beyond what the consumer has read.</p>
+ */
+class ReadAheadChannel implements ReadableByteChannel {
+    // queued to indicate the end of the source or, with failure set, a failed read. As given to the
+    // reader, indicates that it should stop.
+    private static final ByteBufferInstance END = new ByteBufferInstance(ByteBuffer.allocate(0));
+
+    private final ReadableByteChannel source;
+    private final DirectBufferPool pool;
+
+    private final BlockingQueue<ByteBufferInstance> empty;
+    private final BlockingQueue<ByteBufferInstance> filled;
+    private final CountDownLatch readerDone = new CountDownLatch(1);
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    // only accessed by the consumer
+    private ByteBufferInstance current;
+    private boolean endOfSource;
+
+    private ReadAheadChannel(ReadableByteChannel source, int depth, int bufferSize, DirectBufferPool pool) {
+        this.source = source;
+        this.pool = pool;
+        empty = new ArrayBlockingQueue<>(depth + 1);
+        // also has room for END, so the reader never waits on it
+        filled = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth; ++i) {
+            empty.add(pool != null ? pool.borrow(bufferSize) : new ByteBufferInstance(ByteBuffer.allocate(bufferSize)));
+        }
+    }
+
+    /**
+     * @param source the channel to read from, which should be blocking
+     * @param depth the number of buffers that can be filled ahead of the consumer
+     * @param bufferSize the capacity of each buffer
+     * @param pool if not null, the pool to borrow the buffers from, otherwise heap buffers are allocated
+     * @param executor if not null, runs the reader, otherwise a daemon thread is started for it
+     * @return a channel that is already reading ahead
+     */
+    static ReadAheadChannel start(ReadableByteChannel source, int depth, int bufferSize, DirectBufferPool pool,
+                                  Executor executor) {
+        final ReadAheadChannel channel = new ReadAheadChannel(source, depth, bufferSize, pool);
+        final Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                channel.readAhead();
+            }
+        };
+        try {
+            if (executor != null) {
+                executor.execute(reader);
+            }
+            else {
+                final Thread thread = new Thread(reader, "ChannelLineScanner-read-ahead");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (RuntimeException | Error e) {
+            // such as the executor rejecting the reader, which then never touches the buffers
+            channel.releaseBuffers();
+            throw e;
+        }
+        return channel;
+    }
+
+    private void readAhead() {
+        // the buffer being filled, which is returned to the empty queue if the read fails
+        ByteBufferInstance instance = null;
+        try {
+            while (true) {
+                instance = empty.take();
+                if (instance == END || closed) {
+                    if (instance != END) {
+                        // left for close to return to the pool
+                        empty.add(instance);
+                    }
+                    break;
+                }
+                final ByteBuffer buffer = instance.getBuffer();
+                buffer.clear();
+                final int amountRead = source.read(buffer);
+                if (amountRead == -1) {
+                    empty.add(instance);
+                    filled.add(END);
+                    break;
+                }
+                buffer.flip();
+                filled.add(instance);
+                instance = null;
+            }
+        } catch (IOException e) {
+            // left for close to return to the pool
+            empty.add(instance);
+            failure = e;
+            filled.add(END);
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Read-ahead was interrupted");
+            filled.add(END);
+        } finally {
+            readerDone.countDown();
+        }
+    }
+
+    /**
+     * Copies what has been read ahead, waiting only if nothing is ready yet
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        int transferred = 0;
+        while (dst.hasRemaining()) {
+            if (current == null || !current.getBuffer().hasRemaining()) {
+                if (current != null) {
+                    empty.add(current);
+                    current = null;
+                }
+                if (endOfSource) {
+                    break;
+                }
+                final ByteBufferInstance next;
+                try {
+                    // only waits when nothing at all has been transferred
+                    next = transferred == 0 ? filled.take() : filled.poll();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for read-ahead");
+                }
+                if (next == null) {
+                    break;
+                }
+                if (next == END) {
+                    endOfSource = true;
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    break;
+                }
+                current = next;
+            }
+
+            final ByteBuffer buffer = current.getBuffer();
+            final int count = Math.min(dst.remaining(), buffer.remaining());
+            if (count == buffer.remaining()) {
+                dst.put(buffer);
+            }
+            else {
+                final ByteBuffer portion = buffer.duplicate();
+                portion.limit(portion.position() + count);
+                dst.put(portion);
+                buffer.position(portion.position());
+            }
+            transferred += count;
+        }
+
+        return transferred == 0 && endOfSource && dst.hasRemaining() ? -1 : transferred;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Stops the reader, waiting for any read it has in progress to complete, and returns the buffers to
+     * the pool. The source channel is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // wakes the reader if it is waiting for an empty buffer
+        empty.add(END);
+        try {
+            readerDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping read-ahead");
+        }
+
+        if (current != null) {
+            empty.add(current);
+            current = null;
+        }
+        releaseBuffers();
+    }
+
+    private void releaseBuffers() {
+        if (pool != null) {
+            ByteBufferInstance instance;
+            while ((instance = filled.poll()) != null) {
+                release(instance);
+            }
+            while ((instance = empty.poll()) != null) {
+                release(instance);
+            }
+        }
+    }
+
+    private void release(ByteBufferInstance instance) {
+        if (instance != END) {
+            pool.returnObject(instance);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package me.itzg.utils.io;
+
+/**
+ * Receives measurements from a {@link ChannelLineScanner}, given via
+ * {@link ChannelLineScanner#setMetrics(ScanMetrics)}. The scanner tallies each scan privately and reports
+ * once when it ends, so the cost of measuring is a few plain field updates per buffer fill and per line.
+ * <p>Implementations are invoked concurrently by concurrent scans. {@link ScanMetricsCollector} accumulates
+ * the measurements and exposes them over JMX.</p>
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public interface ScanMetrics {
+
+    /**
+     * Invoked when a scan of a channel ends, whether it reached the end of the channel, was stopped by
+     * its observer or failed.
+     *
+     * @param bytesRead the bytes read from the channel
+     * @param linesObserved the lines given to the observer, which excludes those rejected by a line filter
+     * @param readNanos the time spent waiting for reads from the channel
+     * @param scanNanos the rest of the time spent by the scan, which includes the time spent by the observer
+     * @param carriedOverBytes the bytes of content moved to the front of the buffer or to a larger buffer
+     *                         because a line was incomplete at the end of a buffer fill
+     * @param longestLine the length of the longest line observed, in chars when the lines are decoded up
+     *                    front and otherwise in bytes
+     */
+    void scanEnded(long bytesRead, long linesObserved, long readNanos, long scanNanos, long carriedOverBytes,
+                   long longestLine);
+
+    /**
+     * Invoked when a scan borrows a buffer from the scanner's pool.
+     *
+     * @param waitNanos the time taken by the pool to provide the buffer, including any wait for one to
+     *                  be returned
+     * @param exhausted true if the pool had no idle buffer to provide for this borrow, so that one had to
+     *                  be created
+     */
+    void bufferBorrowed(long waitNanos, boolean exhausted);
+}
@@ -0,0 +1,150 @@
+package me.itzg.utils.io;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates the measurements of any number of scanners and concurrent scans. Each total is kept in a
+ * striped counter, so that recording does not itself become a point of contention between scans. The
+ * totals can be read directly or over JMX once {@link #register(String)} has been invoked.
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public class ScanMetricsCollector implements ScanMetrics, ScanMetricsCollectorMXBean {
+    private final StripedCounter scans = new StripedCounter();
+    private final StripedCounter bytesRead = new StripedCounter();
+    private final StripedCounter linesObserved = new StripedCounter();
+    private final StripedCounter readNanos = new StripedCounter();
+    private final StripedCounter scanNanos = new StripedCounter();
+    private final StripedCounter carriedOverBytes = new StripedCounter();
+    private final StripedCounter bufferBorrows = new StripedCounter();
+    private final StripedCounter borrowWaitNanos = new StripedCounter();
+    private final StripedCounter poolExhaustions = new StripedCounter();
+    // only grows, so is rarely written once scans are under way
+    private final AtomicLong longestLine = new AtomicLong();
+
+    @Override
+    public void scanEnded(long bytesRead, long linesObserved, long readNanos, long scanNanos, long carriedOverBytes,
+                          long longestLine) {
+        scans.increment();
+        this.bytesRead.add(bytesRead);
+        this.linesObserved.add(linesObserved);
+        this.readNanos.add(readNanos);
+        this.scanNanos.add(scanNanos);
+        this.carriedOverBytes.add(carriedOverBytes);
+
+        long current;
+        while (longestLine > (current = this.longestLine.get())) {
+            if (this.longestLine.compareAndSet(current, longestLine)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void bufferBorrowed(long waitNanos, boolean exhausted) {
+        bufferBorrows.increment();
+        borrowWaitNanos.add(waitNanos);
+        if (exhausted) {
+            poolExhaustions.increment();
+        }
+    }
+
+    /**
+     * Registers this collector with the platform MBean server.
+     *
+     * @param name distinguishes this collector from others in the same JVM
+     * @return the name it was registered with, of the form
+     * <code>me.itzg.utils:type=ScanMetrics,name=...</code>
+     */
+    public ObjectName register(String name) throws JMException {
+        final ObjectName objectName = new ObjectName("me.itzg.utils:type=ScanMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @return the number of scans that have ended
+     */
+    @Override
+    public long getScans() {
+        return scans.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getLinesObserved() {
+        return linesObserved.sum();
+    }
+
+    /**
+     * @return the total time scans spent waiting for reads
+     */
+    @Override
+    public long getReadNanos() {
+        return readNanos.sum();
+    }
+
+    /**
+     * @return the total time scans spent other than waiting for reads
+     */
+    @Override
+    public long getScanNanos() {
+        return scanNanos.sum();
+    }
+
+    @Override
+    public long getCarriedOverBytes() {
+        return carriedOverBytes.sum();
+    }
+
+    /**
+     * @return the longest line observed by any scan
+     */
+    @Override
+    public long getLongestLine() {
+        return longestLine.get();
+    }
+
+    @Override
+    public long getBufferBorrows() {
+        return bufferBorrows.sum();
+    }
+
+    @Override
+    public long getBorrowWaitNanos() {
+        return borrowWaitNanos.sum();
+    }
+
+    /**
+     * @return the number of borrows that found no idle buffer in the pool
+     */
+    @Override
+    public long getPoolExhaustions() {
+        return poolExhaustions.sum();
+    }
+
+    /**
+     * Zeroes every total, although measurements recorded concurrently with this may be lost.
+     */
+    @Override
+    public void reset() {
+        scans.reset();
+        bytesRead.reset();
+        linesObserved.reset();
+        readNanos.reset();
+        scanNanos.reset();
+        carriedOverBytes.reset();
+        bufferBorrows.reset();
+        borrowWaitNanos.reset();
+        poolExhaustions.reset();
+        longestLine.set(0);
+    }
+}
@@ -0,0 +1,31 @@
+package me.itzg.utils.io;
+
+/**
+ * The JMX view of a {@link ScanMetricsCollector}. Times are in nanoseconds.
+ *
+ * @author Geoff Bourne
+ * @since 1.5
+ */
+public interface ScanMetricsCollectorMXBean {
+    long getScans();
+
+    long getBytesRead();
+
+    long getLinesObserved();
+
+    long getReadNanos();
+
+    long getScanNanos();
+
+    long getCarriedOverBytes();
+
+    long getLongestLine();
+
+    long getBufferBorrows();
+
+    long getBorrowWaitNanos();
+
+    long getPoolExhaustions();
+
+    void reset();
+}
@@ -0,0 +1,70 @@
+package me.itzg.utils.io;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to without contending on a single value, much like Java 8's
+ * <code>LongAdder</code>. Each thread adds to one of several stripes, each on its own cache line, and moves
+ * to another stripe whenever it collides with a thread sharing its current one. Reading sums the stripes.
+ */
+class StripedCounter {
+    // longs per cache line, so that adjacent stripes don't falsely share one
+    private static final int SPACING = 8;
+
+    private static final ThreadLocal<int[]> probe = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            // any non-zero seed that differs between threads
+            return new int[]{(int) (Thread.currentThread().getId() * 0x9E3779B9L) | 1};
+        }
+    };
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StripedCounter() {
+        // a power of two that is at least twice the processors
+        final int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        cells = new AtomicLongArray(stripes * SPACING);
+        mask = stripes - 1;
+    }
+
+    void add(long amount) {
+        final int[] threadProbe = probe.get();
+        final int index = (threadProbe[0] & mask) * SPACING;
+        final long current = cells.get(index);
+        if (!cells.compareAndSet(index, current, current + amount)) {
+            // contended, so move this thread to another stripe for next time
+            int next = threadProbe[0];
+            next ^= next << 13;
+            next ^= next >>> 17;
+            next ^= next << 5;
+            threadProbe[0] = next;
+            cells.getAndAdd(index, amount);
+        }
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    /**
+     * @return the total, which is not an atomic snapshot while other threads are adding
+     */
+    long sum() {
+        long total = 0;
+        for (int i = 0; i < cells.length(); i += SPACING) {
+            total += cells.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Zeroes the counter, although additions concurrent with this may be lost.
+     */
+    void reset() {
+        for (int i = 0; i < cells.length(); i += SPACING) {
+            cells.set(i, 0);
+        }
+    }
+}
@@ -1,7 +1,21 @@
 package me.itzg.utils;
 
+import me.itzg.utils.io.ByteSequence;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.*;
 
 public class AppendableCharSequenceTest {
@@ -91,4 +105,312 @@ public class AppendableCharSequenceTest {
 
         assertEquals("{one two}", outer.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testManyChunks() throws Exception {
+        AppendableCharSequence appendable = new AppendableCharSequence();
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 1000; ++i) {
+            String chunk = Integer.toString(i) + ",";
+            appendable.append(chunk);
+            appendable.append("");
+            expected.append(chunk);
+        }
+
+        assertEquals(expected.length(), appendable.length());
+        assertEquals(expected.toString(), appendable.toString());
+        // randomly, in reverse, to defeat the sequential access cache
+        for (int i = expected.length() - 1; i >= 0; i -= 7) {
+            assertEquals(expected.charAt(i), appendable.charAt(i));
+        }
+        assertEquals(expected.substring(0, 10), appendable.subSequence(0, 10).toString());
+        assertEquals(expected.substring(1234, 2345), appendable.subSequence(1234, 2345).toString());
+        assertEquals("", appendable.subSequence(50, 50).toString());
+    }
+
+    @Test
+    public void testEqualsAndHashCode() throws Exception {
+        AppendableCharSequence one = new AppendableCharSequence().append("abc").append("def");
+        AppendableCharSequence two = new AppendableCharSequence().append("abc").append("def");
+
+        assertEquals(one, two);
+        assertEquals(one.hashCode(), two.hashCode());
+
+        two.append("g");
+        assertFalse(one.equals(two));
+        assertEquals("abcdefg".hashCode(), two.hashCode());
+    }
+
+    @Test
+    public void testEqualsRegardlessOfChunking() throws Exception {
+        AppendableCharSequence one = new AppendableCharSequence().append("ab").append("cdef");
+        AppendableCharSequence two = new AppendableCharSequence().append("abc")
+                .append(new StringBuilder("d")).append(new AppendableCharSequence("ef"));
+        AppendableCharSequence different = new AppendableCharSequence().append("abc").append("deF");
+
+        assertEquals("abcdef".hashCode(), one.hashCode());
+        assertEquals("abcdef".hashCode(), two.hashCode());
+        assertEquals(one, two);
+        assertFalse(one.equals(different));
+
+        Map<AppendableCharSequence, String> map = new HashMap<>();
+        map.put(one, "found");
+        assertEquals("found", map.get(two));
+    }
+
+    @Test
+    public void testToStringMemoized() throws Exception {
+        AppendableCharSequence appendable = new AppendableCharSequence().append("one").append(" two");
+
+        String first = appendable.toString();
+        assertSame(first, appendable.toString());
+
+        appendable.append(" three");
+        assertEquals("one two three", appendable.toString());
+        assertEquals("one two three".hashCode(), appendable.hashCode());
+    }
+
+    @Test
+    public void testGetChars() throws Exception {
+        AppendableCharSequence appendable = new AppendableCharSequence();
+        appendable.append("just one");
+        appendable.append(new StringBuilder(" and another"));
+        appendable.append(CharBuffer.wrap(" and the last"));
+
+        char[] dst = new char[16];
+        appendable.getChars(5, 15, dst, 1);
+        assertEquals("one and an", new String(dst, 1, 10));
+
+        appendable.getChars(20, 33, dst, 0);
+        assertEquals(" and the last", new String(dst, 0, 13));
+
+        try {
+            appendable.getChars(30, 34, dst, 0);
+            fail();
+        } catch (IndexOutOfBoundsException e) { }
+
+        try {
+            appendable.getChars(0, 17, dst, 0);
+            fail();
+        } catch (IndexOutOfBoundsException e) { }
+    }
+
+    @Test
+    public void testCopyAndWriteTo() throws Exception {
+        AppendableCharSequence inner = new AppendableCharSequence("two ");
+        AppendableCharSequence appendable = new AppendableCharSequence("one ")
+                .append(inner)
+                .append(new StringBuilder("three"));
+
+        CharBuffer heap = CharBuffer.allocate(20);
+        heap.put('>');
+        appendable.copyTo(heap);
+        heap.flip();
+        assertEquals(">one two three", heap.toString());
+
+        StringWriter writer = new StringWriter();
+        appendable.writeTo(writer);
+        assertEquals("one two three", writer.toString());
+
+        StringBuilder sb = new StringBuilder();
+        appendable.writeTo(sb);
+        assertEquals("one two three", sb.toString());
+    }
+
+    @Test
+    public void testEncodeTo() throws Exception {
+        AppendableCharSequence appendable = new AppendableCharSequence();
+        StringBuilder expected = new StringBuilder();
+        // surrogate pairs will straddle the internal transfer buffer
+        for (int i = 0; i < 5000; ++i) {
+            String chunk = "caf\u00e9 \ud83d\ude00 ";
+            appendable.append(chunk);
+            expected.append(chunk);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = appendable.encodeTo(Channels.newChannel(out), StandardCharsets.UTF_8);
+
+        byte[] expectedBytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(expectedBytes.length, written);
+        assertArrayEquals(expectedBytes, out.toByteArray());
+
+        out.reset();
+        appendable.encodeTo(Channels.newChannel(out), StandardCharsets.ISO_8859_1);
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.ISO_8859_1), out.toByteArray());
+    }
+
+    @Test
+    public void testSubSequenceView() throws Exception {
+        AppendableCharSequence appendable = new AppendableCharSequence()
+                .append("just one").append(" and another").append(" and the last");
+
+        CharSequence all = appendable.subSequence(0, appendable.length());
+        assertEquals("just one and another and the last", all.toString());
+        assertEquals("", appendable.subSequence(33, 33).toString());
+
+        CharSequence view = appendable.subSequence(5, 24);
+        assertEquals("one and another and", view.toString());
+        assertEquals('a', view.charAt(4));
+        assertEquals("another", view.subSequence(8, 15).toString());
+
+        // the view is unaffected by later modification
+        appendable.delete(0, 20);
+        appendable.append("!");
+        assertEquals("one and another and", view.toString());
+    }
+
+    @Test
+    public void testInsertAndDelete() throws Exception {
+        AppendableCharSequence appendable = new AppendableCharSequence()
+                .append("The quick ").append("brown fox").append(" jumps");
+        int originalHash = appendable.hashCode();
+        String original = appendable.toString();
+
+        appendable.insert(4, "very ");
+        assertEquals("The very quick brown fox jumps", appendable.toString());
+        appendable.insert(0, ">").insert(appendable.length(), "<").insert(15, "[").insert(16, "]");
+        assertEquals(">The very quick[] brown fox jumps<", appendable.toString());
+        assertEquals(">The very quick[] brown fox jumps<".hashCode(), appendable.hashCode());
+
+        appendable.delete(15, 17).delete(0, 1).delete(appendable.length() - 1, appendable.length());
+        appendable.delete(4, 9);
+        assertEquals(original, appendable.toString());
+        assertEquals(originalHash, appendable.hashCode());
+        assertEquals(new AppendableCharSequence(original), appendable);
+
+        appendable.delete(2, 21);
+        assertEquals("Thumps", appendable.toString());
+        assertEquals('u', appendable.charAt(2));
+        assertEquals("hum", appendable.subSequence(1, 4).toString());
+    }
+
+    @Test
+    public void testRandomEdits() throws Exception {
+        Random random = new Random(14);
+        StringBuilder expected = new StringBuilder();
+        AppendableCharSequence appendable = new AppendableCharSequence();
+
+        for (int i = 0; i < 2000; ++i) {
+            String fragment = "<" + i + ">";
+            int op = random.nextInt(3);
+            if (op == 0) {
+                int index = random.nextInt(expected.length() + 1);
+                expected.insert(index, fragment);
+                appendable.insert(index, fragment);
+            }
+            else if (op == 1) {
+                expected.append(fragment);
+                appendable.append(fragment);
+            }
+            else if (expected.length() > 0) {
+                int start = random.nextInt(expected.length());
+                int end = start + random.nextInt(Math.min(10, expected.length() - start) + 1);
+                expected.delete(start, end);
+                appendable.delete(start, end);
+            }
+        }
+
+        assertEquals(expected.length(), appendable.length());
+        assertEquals(expected.toString(), appendable.toString());
+        assertEquals(expected.toString().hashCode(), appendable.hashCode());
+        for (int i = 0; i < expected.length(); i += 3) {
+            assertEquals(expected.charAt(i), appendable.charAt(i));
+        }
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        Random random = new Random(15);
+        AppendableCharSequence appendable = new AppendableCharSequence();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            String fragment = Integer.toString(random.nextInt(100), 36);
+            appendable.append(i % 2 == 0 ? fragment : new StringBuilder(fragment));
+            sb.append(fragment);
+        }
+        String expected = sb.toString();
+
+        for (String target : new String[]{"a", "1z", "zz", "2a3", "no such", ""}) {
+            for (int from = -1; from <= expected.length() + 1; from += 37) {
+                assertEquals(target + "@" + from, expected.indexOf(target, from), appendable.indexOf(target, from));
+                assertEquals(target + "@" + from, expected.lastIndexOf(target, from), appendable.lastIndexOf(target, from));
+            }
+            assertEquals(expected.indexOf(target), appendable.indexOf(target));
+            assertEquals(expected.lastIndexOf(target), appendable.lastIndexOf(target));
+        }
+        for (int from = -1; from <= expected.length() + 1; from += 11) {
+            assertEquals(expected.indexOf('q', from), appendable.indexOf('q', from));
+            assertEquals(expected.lastIndexOf('q', from), appendable.lastIndexOf('q', from));
+        }
+
+        assertTrue(appendable.startsWith(expected.substring(0, 20)));
+        assertTrue(appendable.startsWith(expected.substring(100, 130), 100));
+        assertTrue(appendable.endsWith(expected.substring(expected.length() - 25)));
+        assertFalse(appendable.startsWith(expected.substring(1, 20)));
+        assertTrue(appendable.regionMatches(true, 10, expected.substring(5, 40).toUpperCase(), 5, 30));
+        assertFalse(appendable.regionMatches(10, expected.substring(5, 40).toUpperCase(), 5, 30));
+        assertFalse(appendable.regionMatches(expected.length() - 5, expected, 0, 6));
+    }
+
+    @Test
+    public void testRegexAcrossChunks() throws Exception {
+        AppendableCharSequence appendable = new AppendableCharSequence()
+                .append("GET /ind").append("ex.html HT").append("TP/1.1 ").append("200 ").append("5120");
+
+        Matcher matcher = Pattern.compile("(\\w+) (\\S+) HTTP/[\\d.]+ (\\d+) (\\d+)$").matcher(appendable);
+        assertTrue(matcher.find());
+        assertEquals("GET", matcher.group(1));
+        assertEquals("/index.html", matcher.group(2));
+        assertEquals("200", matcher.group(3));
+        assertEquals("5120", matcher.group(4));
+
+        // walking backward crosses chunks in reverse
+        StringBuilder reversed = new StringBuilder();
+        for (int i = appendable.length() - 1; i >= 0; --i) {
+            reversed.append(appendable.charAt(i));
+        }
+        assertEquals(new StringBuilder(appendable.toString()).reverse().toString(), reversed.toString());
+    }
+
+    @Test
+    public void testAppendLatin1() throws Exception {
+        byte[] bytes = "caf\u00e9 cr\u00e8me".getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        AppendableCharSequence appendable = new AppendableCharSequence()
+                .appendLatin1(bytes, 0, 5)
+                .appendLatin1(direct)
+                .appendLatin1(ByteBuffer.wrap(bytes, 5, 5));
+
+        assertEquals(0, direct.position());
+        assertEquals("caf\u00e9 caf\u00e9 cr\u00e8mecr\u00e8me", appendable.toString());
+        assertEquals('\u00e9', appendable.charAt(8));
+        assertEquals("\u00e9 cr", appendable.subSequence(8, 12).toString());
+        assertEquals(appendable.toString().hashCode(), appendable.hashCode());
+        assertEquals(5, appendable.indexOf("caf\u00e9 cr"));
+    }
+
+    @Test
+    public void testAppendCompact() throws Exception {
+        byte[] bytes = "line one\nline \u00e9\n".getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            longLine.append((char) ('a' + i % 26));
+        }
+
+        AppendableCharSequence appendable = new AppendableCharSequence()
+                .appendCompact(new ByteSequence(buffer, 0, 9, StandardCharsets.ISO_8859_1))
+                .appendCompact(new ByteSequence(buffer, 9, 16, StandardCharsets.ISO_8859_1))
+                .appendCompact(CharBuffer.wrap("snow\u2603man"))
+                .appendCompact(new StringBuilder("plain"))
+                .appendCompact(longLine);
+
+        // the copies are independent of the source
+        Arrays.fill(bytes, (byte) 'x');
+        assertEquals("line one\nline \u00e9\nsnow\u2603manplain" + longLine, appendable.toString());
+    }
+}
@@ -0,0 +1,96 @@
+package me.itzg.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CharRopeTest {
+    @Test
+    public void testConcatAndAccess() throws Exception {
+        CharRope rope = CharRope.of("just one").concat(" and another").concat(new StringBuilder(" and the last"));
+
+        assertEquals(33, rope.length());
+        assertEquals('j', rope.charAt(0));
+        assertEquals('a', rope.charAt(9));
+        assertEquals('t', rope.charAt(32));
+        assertEquals("one and another and", rope.subSequence(5, 24).toString());
+        assertEquals("just one and another and the last", rope.toString());
+        assertEquals("just one and another and the last".hashCode(), rope.hashCode());
+    }
+
+    @Test
+    public void testInsertAndDeleteLeaveOriginal() throws Exception {
+        String content = "The quick brown fox jumps over the lazy dog";
+        CharRope original = CharRope.of(content);
+
+        CharRope inserted = original.insert(10, "very, very red and ");
+        CharRope deleted = inserted.delete(4, 10);
+
+        assertEquals(content, original.toString());
+        assertEquals("The quick very, very red and brown fox jumps over the lazy dog", inserted.toString());
+        assertEquals("The very, very red and brown fox jumps over the lazy dog", deleted.toString());
+        assertEquals(content, deleted.delete(4, 23).insert(4, "quick ").toString());
+        assertEquals(original, deleted.delete(4, 23).insert(4, "quick "));
+    }
+
+    @Test
+    public void testNegativeCases() throws Exception {
+        CharRope rope = CharRope.of("abc");
+
+        try {
+            rope.charAt(3);
+            fail();
+        } catch (IndexOutOfBoundsException e) { }
+        try {
+            rope.subSequence(2, 4);
+            fail();
+        } catch (IndexOutOfBoundsException e) { }
+        try {
+            rope.insert(4, "d");
+            fail();
+        } catch (IndexOutOfBoundsException e) { }
+
+        assertSame(CharRope.EMPTY, rope.delete(0, 3));
+    }
+
+    @Test
+    public void testRandomEditsStayBalanced() throws Exception {
+        Random random = new Random(14);
+        StringBuilder expected = new StringBuilder();
+        CharRope rope = CharRope.EMPTY;
+
+        for (int i = 0; i < 5000; ++i) {
+            String fragment = Integer.toString(random.nextInt(1000000)) + "-" + i + ";";
+            int op = random.nextInt(10);
+            if (op < 5) {
+                int index = random.nextInt(expected.length() + 1);
+                expected.insert(index, fragment);
+                rope = rope.insert(index, fragment);
+            }
+            else if (op < 8) {
+                expected.append(fragment);
+                rope = rope.concat(fragment);
+            }
+            else if (expected.length() > 0) {
+                int start = random.nextInt(expected.length());
+                int end = start + random.nextInt(Math.min(50, expected.length() - start) + 1);
+                expected.delete(start, end);
+                rope = rope.delete(start, end);
+            }
+        }
+
+        assertEquals(expected.toString(), rope.toString());
+        assertEquals(expected.toString().hashCode(), rope.hashCode());
+        for (int i = 0; i < expected.length(); i += 13) {
+            assertEquals(expected.charAt(i), rope.charAt(i));
+        }
+        int start = expected.length() / 3;
+        assertEquals(expected.substring(start, start * 2), rope.subSequence(start, start * 2).toString());
+
+        // an AVL tree's height is at most 1.44 log2(n)
+        double pieces = (double) expected.length() / CharRope.SHORT_PIECE_LENGTH * 2;
+        assertTrue("depth was " + rope.depth(), rope.depth() <= 1.45 * Math.log(pieces) / Math.log(2) + 2);
+    }
+}
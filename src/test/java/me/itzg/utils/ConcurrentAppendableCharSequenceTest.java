@@ -0,0 +1,161 @@
+package me.itzg.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentAppendableCharSequenceTest {
+    @Test
+    public void testSingleThreaded() throws Exception {
+        ConcurrentAppendableCharSequence appendable = new ConcurrentAppendableCharSequence("just one")
+                .append(" and another")
+                .append("")
+                .append(new StringBuilder(" and the last"));
+
+        assertEquals(33, appendable.length());
+        assertEquals('j', appendable.charAt(0));
+        assertEquals('a', appendable.charAt(9));
+        assertEquals('t', appendable.charAt(32));
+        assertEquals("one and another and", appendable.subSequence(5, 24).toString());
+        assertEquals("just one and another and the last", appendable.toString());
+
+        try {
+            appendable.charAt(33);
+            fail();
+        } catch (IndexOutOfBoundsException e) { }
+    }
+
+    @Test
+    public void testSnapshotUnaffectedByAppends() throws Exception {
+        ConcurrentAppendableCharSequence appendable = new ConcurrentAppendableCharSequence();
+        StringBuilder expected = new StringBuilder();
+        // enough to span several segments
+        for (int i = 0; i < 5000; ++i) {
+            appendable.append(i + ",");
+            expected.append(i).append(',');
+        }
+
+        ConcurrentAppendableCharSequence.Snapshot snapshot = appendable.snapshot();
+        appendable.append("more");
+
+        assertEquals(expected.length(), snapshot.length());
+        assertEquals(expected.toString(), snapshot.toString());
+        for (int i = expected.length() - 1; i >= 0; i -= 17) {
+            assertEquals(expected.charAt(i), snapshot.charAt(i));
+        }
+        assertEquals(expected.substring(1000, 3000), snapshot.subSequence(1000, 3000).toString());
+        assertEquals(expected.length() + 4, appendable.length());
+    }
+
+    @Test
+    public void testRejectedAppendLeavesStateUnchanged() throws Exception {
+        ConcurrentAppendableCharSequence appendable = new ConcurrentAppendableCharSequence();
+        // only its length is ever used
+        appendable.append(new CharSequence() {
+            @Override
+            public int length() {
+                return Integer.MAX_VALUE - 5;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return 'x';
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        try {
+            appendable.append("0123456789");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        appendable.append("abc");
+        assertEquals(Integer.MAX_VALUE - 2, appendable.length());
+        assertEquals('c', appendable.charAt(Integer.MAX_VALUE - 3));
+    }
+
+    @Test
+    public void testConcurrentAppendsAndReads() throws Exception {
+        final int writers = 4;
+        final int appendsPerWriter = 20000;
+        final ConcurrentAppendableCharSequence appendable = new ConcurrentAppendableCharSequence();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; ++w) {
+                final char id = (char) ('a' + w);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < appendsPerWriter; ++i) {
+                            appendable.append(i % 2 == 0 ? String.valueOf(id) : id + "" + id);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            Future<Integer> reader = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    int lastLength = 0;
+                    int reads = 0;
+                    while (writing.get()) {
+                        ConcurrentAppendableCharSequence.Snapshot snapshot = appendable.snapshot();
+                        assertTrue(snapshot.length() >= lastLength);
+                        // every published char must be complete
+                        String content = snapshot.toString();
+                        assertEquals(snapshot.length(), content.length());
+                        assertEquals(-1, content.indexOf('\0'));
+                        lastLength = snapshot.length();
+                        ++reads;
+                    }
+                    return reads;
+                }
+            });
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String content = appendable.toString();
+        assertEquals(writers * appendsPerWriter * 3 / 2, appendable.length());
+        assertEquals(appendable.length(), content.length());
+        for (int w = 0; w < writers; ++w) {
+            char id = (char) ('a' + w);
+            int count = 0;
+            for (int i = 0; i < content.length(); ++i) {
+                if (content.charAt(i) == id) {
+                    ++count;
+                }
+            }
+            assertEquals(appendsPerWriter * 3 / 2, count);
+        }
+    }
+}
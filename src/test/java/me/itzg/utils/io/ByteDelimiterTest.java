@@ -0,0 +1,70 @@
+package me.itzg.utils.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ByteDelimiterTest {
+    @Test
+    public void testEveryAlignment() throws Exception {
+        ByteDelimiter delimiter = ByteDelimiter.encode("\n", StandardCharsets.ISO_8859_1);
+
+        for (int at = 0; at < 40; ++at) {
+            byte[] content = new byte[40];
+            // use bytes adjacent to the delimiter's value to provoke any borrow propagation
+            for (int i = 0; i < content.length; ++i) {
+                content[i] = (byte) (i % 2 == 0 ? '\n' + 1 : 0x80 | '\n');
+            }
+            content[at] = '\n';
+
+            assertEquals(at, delimiter.indexIn(ByteBuffer.wrap(content), 0, content.length));
+            assertEquals(at, delimiter.indexIn(ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN),
+                    0, content.length));
+            assertEquals(-1, delimiter.indexIn(ByteBuffer.wrap(content), at + 1, content.length));
+            assertEquals(-1, delimiter.indexIn(ByteBuffer.wrap(content), 0, at));
+        }
+    }
+
+    @Test
+    public void testMultiByte() throws Exception {
+        ByteDelimiter delimiter = ByteDelimiter.encode("+=", StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.wrap("AAA+++=BBBBBBBBBBBBBB+".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertEquals(5, delimiter.indexIn(buffer, 0, buffer.limit()));
+        // partial delimiter at the end is not a match
+        assertEquals(-1, delimiter.indexIn(buffer, 7, buffer.limit()));
+    }
+
+    @Test
+    public void testAlternatives() throws Exception {
+        ByteDelimiter delimiter = ByteDelimiter.encode(new String[]{"\n", "\r\n"}, StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.wrap("AAAAAAAAAA\r\nBBBBBBBBBB\nC\r".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertEquals(10, delimiter.indexIn(buffer, 0, buffer.limit()));
+        assertEquals(2, delimiter.matchLengthAt(buffer, 10));
+        assertEquals(11, delimiter.indexIn(buffer, 11, buffer.limit()));
+        assertEquals(1, delimiter.matchLengthAt(buffer, 11));
+        assertEquals(22, delimiter.indexIn(buffer, 12, buffer.limit()));
+        assertEquals(1, delimiter.matchLengthAt(buffer, 22));
+        assertEquals(-1, delimiter.indexIn(buffer, 23, buffer.limit()));
+    }
+
+    @Test
+    public void testSelfOverlapping() throws Exception {
+        for (String[] delimiters : new String[][]{{"\n"}, {"\n", "\r\n"}, {"\r", "\r\n", "\n"}, {"+="}, {"abc"}}) {
+            assertFalse(Arrays.toString(delimiters),
+                    ByteDelimiter.encode(delimiters, StandardCharsets.ISO_8859_1).isSelfOverlapping());
+        }
+        for (String[] delimiters : new String[][]{{"aa"}, {"aba"}, {"abc", "b"}, {"ab", "bc"}}) {
+            assertTrue(Arrays.toString(delimiters),
+                    ByteDelimiter.encode(delimiters, StandardCharsets.ISO_8859_1).isSelfOverlapping());
+        }
+    }
+}
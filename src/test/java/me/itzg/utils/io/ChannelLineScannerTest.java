@@ -1,22 +1,46 @@
 package me.itzg.utils.io;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Matchers;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
 
 public class ChannelLineScannerTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
     private ChannelLineScanner lineScanner;
 
     @Before
@@ -155,4 +179,906 @@ public class ChannelLineScannerTest {
             verifyNoMoreInteractions(observer);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testScanMapped() throws Exception {
+        Path contentPath = loadResourcePath("ChannelLineScannerTest/test-no-eof-nl.txt");
+
+        ChannelLineScanner.Observer observer = mock(ChannelLineScanner.Observer.class);
+        when(observer.observeLine(any(CharSequence.class), anyLong())).thenReturn(true);
+
+        lineScanner.scanMapped(contentPath, observer);
+
+        verify(observer).observeLine(matchingCharSequence("AAA"), Matchers.eq(0l));
+        verify(observer).observeLine(matchingCharSequence("BBBB"), Matchers.eq(4l));
+        verify(observer).observeLine(matchingCharSequence("CCCCC"), Matchers.eq(9l));
+        verify(observer).observeLine(matchingCharSequence("DDDDDD"), Matchers.eq(15l));
+        verify(observer).observeEndOfFile(21);
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void testScanMappedInWindows() throws Exception {
+        lineScanner.setMappedWindowSize(8); // windows land in middle of lines and delimiters
+        lineScanner.setDelimiter("+=");
+
+        Path contentPath = loadResourcePath("ChannelLineScannerTest/test-crnl.txt");
+
+        ChannelLineScanner.Observer observer = mock(ChannelLineScanner.Observer.class);
+        when(observer.observeLine(any(CharSequence.class), anyLong())).thenReturn(true);
+
+        lineScanner.scanMapped(contentPath, observer);
+
+        verify(observer).observeLine(matchingCharSequence("AAA"), Matchers.eq(0l));
+        verify(observer).observeLine(matchingCharSequence("BBBB"), Matchers.eq(5l));
+        verify(observer).observeLine(matchingCharSequence("CCCCC"), Matchers.eq(11l));
+        verify(observer).observeLine(matchingCharSequence("DDDDDD"), Matchers.eq(18l));
+        verify(observer).observeEndOfFile(24);
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void testScanMappedLineLongerThanWindow() throws Exception {
+        lineScanner.setMappedWindowSize(4);
+
+        Path contentPath = loadResourcePath("ChannelLineScannerTest/test-oneline-no-eof-nl.txt");
+
+        ChannelLineScanner.Observer observer = mock(ChannelLineScanner.Observer.class);
+        when(observer.observeLine(any(CharSequence.class), anyLong())).thenReturn(true);
+
+        lineScanner.scanMapped(contentPath, observer);
+
+        verify(observer).observeLine(matchingCharSequence("DDDDDD"), Matchers.eq(0l));
+        verify(observer).observeEndOfFile(6);
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void testScanParallelOrdered() throws Exception {
+        lineScanner.setParallelSplitSize(97); // ranges land in middle of lines
+        Path contentPath = createVariedLinesFile(1000, "\n");
+
+        RecordingObserver expected = new RecordingObserver();
+        lineScanner.scanMapped(contentPath, expected);
+
+        RecordingObserver actual = new RecordingObserver();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanParallel(fileChannel, actual, executor, true);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1000, actual.lines.size());
+        assertEquals(expected.lines, actual.lines);
+        assertEquals(expected.endOfFile, actual.endOfFile);
+    }
+
+    @Test
+    public void testScanParallelOrderedBoundsRangesAhead() throws Exception {
+        lineScanner.setParallelSplitSize(97);
+        Path contentPath = createVariedLinesFile(1000, "\n");
+
+        final AtomicInteger submitted = new AtomicInteger();
+        ExecutorService executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            public void execute(Runnable command) {
+                submitted.incrementAndGet();
+                super.execute(command);
+            }
+        };
+        final List<Integer> submittedAtFirstLine = new ArrayList<>();
+        RecordingObserver actual = new RecordingObserver() {
+            @Override
+            public synchronized boolean observeLine(CharSequence line, long position) {
+                if (lines.isEmpty()) {
+                    submittedAtFirstLine.add(submitted.get());
+                }
+                return super.observeLine(line, position);
+            }
+        };
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanParallel(fileChannel, actual, executor, true);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1000, actual.lines.size());
+        // the range being delivered and one for each thread
+        assertEquals(Arrays.asList(3), submittedAtFirstLine);
+        assertTrue(submitted.get() > 100);
+    }
+
+    @Test
+    public void testScanParallelSelfOverlappingDelimiter() throws Exception {
+        lineScanner.setParallelSplitSize(1);
+        lineScanner.setDelimiter("aa");
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, "xaaaybaaaaaz".getBytes(StandardCharsets.ISO_8859_1));
+
+        RecordingObserver actual = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanParallel(fileChannel, actual, true);
+
+            try {
+                lineScanner.scan(fileChannel, 4, 8, new RecordingObserver());
+                fail("expected the range to be rejected");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        assertEquals(Arrays.asList("0000000000:x", "0000000003:ayb", "0000000008:", "0000000010:az"), actual.lines);
+    }
+
+    @Test
+    public void testScanParallelUnordered() throws Exception {
+        lineScanner.setParallelSplitSize(97);
+        lineScanner.setDelimiter("+=");
+        Path contentPath = createVariedLinesFile(1000, "+=");
+
+        RecordingObserver expected = new RecordingObserver();
+        lineScanner.scanMapped(contentPath, expected);
+
+        RecordingObserver actual = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanParallel(fileChannel, actual, false);
+        }
+
+        Collections.sort(actual.lines);
+        assertEquals(1000, actual.lines.size());
+        assertEquals(expected.lines, actual.lines);
+        assertEquals(expected.endOfFile, actual.endOfFile);
+    }
+
+    private Path createVariedLinesFile(int lineCount, String delimiter) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lineCount; ++i) {
+            for (int j = 0; j < i % 37; ++j) {
+                content.append((char) ('a' + j % 26));
+            }
+            content.append(delimiter);
+        }
+        Path path = temp.newFile().toPath();
+        Files.write(path, content.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return path;
+    }
+
+    /**
+     * Records each line as "position:content" which conveniently sorts into file order
+     */
+    private static class RecordingObserver implements ChannelLineScanner.Observer {
+        final List<String> lines = new ArrayList<>();
+        long endOfFile = -1;
+
+        @Override
+        public synchronized boolean observeLine(CharSequence line, long position) {
+            lines.add(String.format("%010d:%s", position, line));
+            return true;
+        }
+
+        @Override
+        public synchronized void observeEndOfFile(long position) {
+            endOfFile = position;
+        }
+    }
+
+    @Test
+    public void testLazyDecodingInBits() throws Exception {
+        lineScanner.setBufferSize(15);
+        lineScanner.setLazyDecoding(true);
+
+        Path contentPath = loadResourcePath("ChannelLineScannerTest/test-with-eof-nl.txt");
+        RecordingObserver observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, observer);
+        }
+
+        assertEquals(Arrays.asList("0000000000:AAA", "0000000004:BBBB", "0000000009:CCCCC", "0000000015:DDDDDD"),
+                observer.lines);
+        assertEquals(22, observer.endOfFile);
+    }
+
+    @Test
+    public void testLazyDecodingUtf8() throws Exception {
+        lineScanner.setBufferSize(16);
+        lineScanner.setLazyDecoding(true);
+        lineScanner.setCharset(StandardCharsets.UTF_8);
+        lineScanner.setDelimiter("+=");
+
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, "h\u00e9llo+=w\u00f6rld\u2603+=+=last".getBytes(StandardCharsets.UTF_8));
+
+        RecordingObserver observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, observer);
+        }
+
+        assertEquals(Arrays.asList("0000000000:h\u00e9llo", "0000000008:w\u00f6rld\u2603", "0000000019:",
+                "0000000021:last"), observer.lines);
+        assertEquals(25, observer.endOfFile);
+    }
+
+    @Test
+    public void testOverlappingDelimiterPrefix() throws Exception {
+        lineScanner.setBufferSize(8); // also forces matches to span refills
+        lineScanner.setDelimiter("||\n");
+
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, "A|||\nBB||||\n|||\nC".getBytes(StandardCharsets.ISO_8859_1));
+
+        RecordingObserver observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, observer);
+        }
+
+        assertEquals(Arrays.asList("0000000000:A|", "0000000005:BB||", "0000000012:|", "0000000016:C"),
+                observer.lines);
+        assertEquals(17, observer.endOfFile);
+    }
+
+    @Test
+    public void testAlternativeDelimiters() throws Exception {
+        lineScanner.setBufferSize(8);
+        lineScanner.setDelimiters("\n", "\r\n");
+
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, "AAA\r\nBBBB\nCC\r\r\n\nD".getBytes(StandardCharsets.ISO_8859_1));
+        List<String> expected = Arrays.asList("0000000000:AAA", "0000000005:BBBB", "0000000010:CC\r",
+                "0000000015:", "0000000016:D");
+
+        RecordingObserver observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, observer);
+        }
+        assertEquals(expected, observer.lines);
+
+        observer = new RecordingObserver();
+        lineScanner.scanMapped(contentPath, observer);
+        assertEquals(expected, observer.lines);
+
+        lineScanner.setLazyDecoding(true);
+        observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, observer);
+        }
+        assertEquals(expected, observer.lines);
+        assertEquals(17, observer.endOfFile);
+    }
+
+    @Test
+    public void testUtf8ByteOffsets() throws Exception {
+        lineScanner.setCharset(StandardCharsets.UTF_8);
+
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, "h\u00e9llo\nw\u00f6rld\u2603\n\ud83d\ude00!\nlast".getBytes(StandardCharsets.UTF_8));
+        List<String> expected = Arrays.asList("0000000000:h\u00e9llo", "0000000007:w\u00f6rld\u2603",
+                "0000000017:\ud83d\ude00!", "0000000023:last");
+
+        // every buffer size splits the multi-byte chars at a different place
+        for (int bufferSize = 4; bufferSize <= 32; ++bufferSize) {
+            lineScanner.setBufferSize(bufferSize);
+            lineScanner.initDefaultBufferPool();
+
+            RecordingObserver observer = new RecordingObserver();
+            try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                lineScanner.scan(fileChannel, observer);
+            }
+            assertEquals("bufferSize=" + bufferSize, expected, observer.lines);
+            assertEquals(27, observer.endOfFile);
+        }
+    }
+
+    @Test
+    public void testMalformedUtf8ByteOffsets() throws Exception {
+        lineScanner.setBufferSize(8);
+        lineScanner.setCharset(StandardCharsets.UTF_8);
+
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, new byte[]{'A', (byte) 0xff, 'B', '\n', (byte) 0xe2, (byte) 0x98, '\n', 'C'});
+
+        RecordingObserver observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, observer);
+        }
+        assertEquals(Arrays.asList("0000000000:A\ufffdB", "0000000004:\ufffd", "0000000007:C"), observer.lines);
+    }
+
+    @Test
+    public void testUtf16ByteOffsets() throws Exception {
+        lineScanner.setBufferSize(7);
+        lineScanner.setCharset(StandardCharsets.UTF_16);
+
+        Path contentPath = temp.newFile().toPath();
+        // encoding includes a byte order mark
+        Files.write(contentPath, "AAA\nBB\nC".getBytes(StandardCharsets.UTF_16));
+
+        RecordingObserver observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, observer);
+        }
+        assertEquals(Arrays.asList("0000000002:AAA", "0000000010:BB", "0000000016:C"), observer.lines);
+        assertEquals(18, observer.endOfFile);
+    }
+
+    @Test
+    public void testLinesLongerThanBuffer() throws Exception {
+        Path contentPath = temp.newFile().toPath();
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            // mostly short lines with the occasional very long one
+            final int length = i % 5 == 0 ? 1000 * i + 7 : i;
+            expected.add(String.format("%010d:", content.length()) + repeat('a' + i, length));
+            content.append(repeat('a' + i, length)).append('\n');
+        }
+        Files.write(contentPath, content.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        lineScanner.setBufferSize(16);
+        lineScanner.setMappedWindowSize(16);
+        for (int variant = 0; variant < 4; ++variant) {
+            if (variant == 1) {
+                lineScanner.setLazyDecoding(true);
+            }
+            else if (variant == 2) {
+                lineScanner.initDirectBufferPool();
+            }
+
+            RecordingObserver observer = new RecordingObserver();
+            if (variant == 3) {
+                lineScanner.scanMapped(contentPath, observer);
+            }
+            else {
+                try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                    lineScanner.scan(fileChannel, observer);
+                }
+            }
+            assertEquals("variant " + variant, expected, observer.lines);
+            assertEquals(content.length(), observer.endOfFile);
+        }
+    }
+
+    @Test
+    public void testLongLineIsNotRecopiedEachFill() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 300000; ++i) {
+            longLine.append("ab\u00e9");
+        }
+        String content = "first\n" + longLine + "\nlast\u00e9\n";
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, content.getBytes(StandardCharsets.UTF_8));
+        final int longLineBytes = longLine.toString().getBytes(StandardCharsets.UTF_8).length;
+
+        lineScanner.setCharset(StandardCharsets.UTF_8);
+        lineScanner.setBufferSize(64);
+        ScanMetricsCollector metrics = new ScanMetricsCollector();
+        lineScanner.setMetrics(metrics);
+
+        final List<CharSequence> lines = new ArrayList<>();
+        final List<Long> positions = new ArrayList<>();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, new ChannelLineScanner.Observer() {
+                @Override
+                public boolean observeLine(CharSequence line, long position) {
+                    // retained without copying, which decoded lines allow
+                    lines.add(line);
+                    positions.add(position);
+                    return true;
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                }
+            });
+        }
+
+        assertEquals(3, lines.size());
+        assertEquals("first", lines.get(0).toString());
+        assertEquals(longLine.toString(), lines.get(1).toString());
+        assertEquals("last\u00e9", lines.get(2).toString());
+        assertEquals(Arrays.asList(0L, 6L, 7L + longLineBytes), positions);
+        // moving the partial line only when out of room copies it a bounded number of times in total,
+        // whereas copying it on every fill would be quadratic
+        assertTrue("carried over " + metrics.getCarriedOverBytes(), metrics.getCarriedOverBytes() < 3L * longLineBytes);
+    }
+
+    private static String repeat(int c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, (char) c);
+        return new String(chars);
+    }
+
+    @Test
+    public void testScanBatches() throws Exception {
+        Path contentPath = createVariedLinesFile(1000, "\r\n");
+        lineScanner.setDelimiter("\r\n");
+
+        RecordingObserver expected = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, expected);
+        }
+
+        for (int bufferSize : new int[]{16, 1024, 65536}) {
+            lineScanner.setBufferSize(bufferSize);
+            lineScanner.initDefaultBufferPool();
+
+            RecordingBatchObserver actual = new RecordingBatchObserver(Integer.MAX_VALUE);
+            try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                lineScanner.scanBatches(fileChannel, actual);
+            }
+            assertEquals("bufferSize " + bufferSize, expected.lines, actual.lines);
+            assertEquals(expected.endOfFile, actual.endOfFile);
+        }
+    }
+
+    @Test
+    public void testScanBatchesPartialLastLineAndStop() throws Exception {
+        lineScanner.setBufferSize(8);
+        Path contentPath = loadResourcePath("ChannelLineScannerTest/test-no-eof-nl.txt");
+
+        RecordingBatchObserver all = new RecordingBatchObserver(Integer.MAX_VALUE);
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanBatches(fileChannel, all);
+        }
+        assertEquals(Arrays.asList("0000000000:AAA", "0000000004:BBBB", "0000000009:CCCCC", "0000000015:DDDDDD"),
+                all.lines);
+        assertEquals(21, all.endOfFile);
+
+        RecordingBatchObserver stopped = new RecordingBatchObserver(1);
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanBatches(fileChannel, stopped);
+        }
+        assertEquals(Collections.singletonList("0000000000:AAA"), stopped.lines);
+        assertEquals(-1, stopped.endOfFile);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testScanBatchesRequiresByteScannableCharset() throws Exception {
+        lineScanner.setCharset(StandardCharsets.UTF_16);
+        Path contentPath = loadResourcePath("ChannelLineScannerTest/test-no-eof-nl.txt");
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanBatches(fileChannel, new RecordingBatchObserver(Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Records lines in the same form as {@link RecordingObserver}, stopping after the given number of batches
+     */
+    private static class RecordingBatchObserver implements ChannelLineScanner.BatchObserver {
+        final List<String> lines = new ArrayList<>();
+        long endOfFile = -1;
+        private int batchesRemaining;
+
+        RecordingBatchObserver(int batches) {
+            batchesRemaining = batches;
+        }
+
+        @Override
+        public boolean observeLines(ByteBuffer buffer, int[] starts, int[] ends, int count, long baseOffset) {
+            for (int i = 0; i < count; ++i) {
+                byte[] bytes = new byte[ends[i] - starts[i]];
+                for (int j = 0; j < bytes.length; ++j) {
+                    bytes[j] = buffer.get(starts[i] + j);
+                }
+                lines.add(String.format("%010d:%s", baseOffset + starts[i],
+                        new String(bytes, StandardCharsets.ISO_8859_1)));
+            }
+            return --batchesRemaining > 0;
+        }
+
+        @Override
+        public void observeEndOfFile(long position) {
+            endOfFile = position;
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        Path contentPath = createVariedLinesFile(2000, "\n");
+        lineScanner.setBufferSize(64);
+
+        RecordingObserver expected = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, expected);
+        }
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (int variant = 0; variant < 4; ++variant) {
+                lineScanner.setReadAheadDepth(1 + variant);
+                lineScanner.setLazyDecoding(variant % 2 == 1);
+                if (variant == 2) {
+                    lineScanner.initDirectBufferPool();
+                    lineScanner.setReadAheadExecutor(executor);
+                }
+
+                RecordingObserver actual = new RecordingObserver();
+                try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                    lineScanner.scan(fileChannel, actual);
+                }
+                assertEquals("variant " + variant, expected.lines, actual.lines);
+                assertEquals(expected.endOfFile, actual.endOfFile);
+
+                RecordingBatchObserver batches = new RecordingBatchObserver(Integer.MAX_VALUE);
+                try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                    lineScanner.scanBatches(fileChannel, batches);
+                }
+                assertEquals("variant " + variant, expected.lines, batches.lines);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadAheadStopsEarly() throws Exception {
+        Path contentPath = createVariedLinesFile(2000, "\n");
+        lineScanner.setBufferSize(64);
+        lineScanner.setReadAheadDepth(2);
+        DirectBufferPool pool = lineScanner.initDirectBufferPool();
+
+        final List<String> lines = new ArrayList<>();
+        final boolean[] endOfFile = new boolean[1];
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, new ChannelLineScanner.Observer() {
+                @Override
+                public boolean observeLine(CharSequence line, long position) {
+                    lines.add(line.toString());
+                    return lines.size() < 10;
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                    endOfFile[0] = true;
+                }
+            });
+        }
+
+        assertEquals(10, lines.size());
+        assertFalse(endOfFile[0]);
+        // every buffer, including those read ahead, has been returned
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    public void testPrefixOverlappingDelimitersAcrossBuffers() throws Exception {
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, "a\r\nb\r\nc\rd\r".getBytes(StandardCharsets.ISO_8859_1));
+        lineScanner.setDelimiters("\r", "\r\n", "\n");
+        final List<String> expected = Arrays.asList("0000000000:a", "0000000003:b", "0000000006:c", "0000000008:d");
+
+        for (int bufferSize : new int[]{1, 2, 3, 4, 5, 64}) {
+            lineScanner.setBufferSize(bufferSize);
+            lineScanner.setMappedWindowSize(bufferSize);
+            lineScanner.setParallelSplitSize(bufferSize);
+            for (boolean lazy : new boolean[]{false, true}) {
+                lineScanner.setLazyDecoding(lazy);
+                RecordingObserver observer = new RecordingObserver();
+                try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                    lineScanner.scan(fileChannel, observer);
+                }
+                assertEquals("bufferSize=" + bufferSize + ", lazy=" + lazy, expected, observer.lines);
+                assertEquals(10, observer.endOfFile);
+            }
+
+            RecordingBatchObserver batchObserver = new RecordingBatchObserver(Integer.MAX_VALUE);
+            try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                lineScanner.scanBatches(fileChannel, batchObserver);
+            }
+            assertEquals("bufferSize=" + bufferSize, expected, batchObserver.lines);
+            assertEquals(10, batchObserver.endOfFile);
+
+            RecordingObserver mapped = new RecordingObserver();
+            lineScanner.scanMapped(contentPath, mapped);
+            assertEquals("bufferSize=" + bufferSize, expected, mapped.lines);
+
+            RecordingObserver parallel = new RecordingObserver();
+            try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                lineScanner.scanParallel(fileChannel, parallel, true);
+            }
+            assertEquals("bufferSize=" + bufferSize, expected, parallel.lines);
+        }
+    }
+
+    @Test
+    public void testScanReverse() throws Exception {
+        Path contentPath = createVariedLinesFile(500, "\r\n");
+        // and a final line without a delimiter
+        Files.write(contentPath, "tail".getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        lineScanner.setDelimiters("\r\n", "\n");
+
+        RecordingObserver forward = new RecordingObserver();
+        lineScanner.scanMapped(contentPath, forward);
+        List<String> expected = new ArrayList<>(forward.lines);
+        Collections.reverse(expected);
+
+        for (int bufferSize : new int[]{1, 2, 3, 7, 64, 8192}) {
+            lineScanner.setBufferSize(bufferSize);
+            for (boolean lazy : new boolean[]{false, true}) {
+                lineScanner.setLazyDecoding(lazy);
+                RecordingObserver actual = new RecordingObserver();
+                try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                    lineScanner.scanReverse(fileChannel, actual);
+                }
+                assertEquals("bufferSize=" + bufferSize, expected, actual.lines);
+                assertEquals(0, actual.endOfFile);
+            }
+        }
+    }
+
+    @Test
+    public void testScanReverseEdges() throws Exception {
+        RecordingObserver observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(loadResourcePath("ChannelLineScannerTest/test-with-eof-nl.txt"),
+                StandardOpenOption.READ)) {
+            lineScanner.scanReverse(fileChannel, observer);
+        }
+        assertEquals(Arrays.asList("0000000015:DDDDDD", "0000000009:CCCCC", "0000000004:BBBB", "0000000000:AAA"),
+                observer.lines);
+
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, "\n\nX".getBytes(StandardCharsets.ISO_8859_1));
+        observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanReverse(fileChannel, observer);
+        }
+        assertEquals(Arrays.asList("0000000002:X", "0000000001:", "0000000000:"), observer.lines);
+
+        observer = new RecordingObserver();
+        try (FileChannel fileChannel = FileChannel.open(temp.newFile().toPath(), StandardOpenOption.READ)) {
+            lineScanner.scanReverse(fileChannel, observer);
+        }
+        assertEquals(Collections.<String>emptyList(), observer.lines);
+        assertEquals(0, observer.endOfFile);
+    }
+
+    @Test
+    public void testScanReverseStopsEarly() throws Exception {
+        Path contentPath = createVariedLinesFile(10000, "\n");
+        lineScanner.setBufferSize(256);
+
+        final List<String> lines = new ArrayList<>();
+        final boolean[] endOfFile = new boolean[1];
+        final long[] bytesRead = new long[1];
+        try (final FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            // not a FileChannel, so that the seek and read path is exercised
+            SeekableByteChannel counting = new SeekableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    final int read = fileChannel.read(dst);
+                    bytesRead[0] += read;
+                    return read;
+                }
+
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public long position() throws IOException {
+                    return fileChannel.position();
+                }
+
+                @Override
+                public SeekableByteChannel position(long newPosition) throws IOException {
+                    fileChannel.position(newPosition);
+                    return this;
+                }
+
+                @Override
+                public long size() throws IOException {
+                    return fileChannel.size();
+                }
+
+                @Override
+                public SeekableByteChannel truncate(long size) throws IOException {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return fileChannel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // the file channel is closed by the enclosing try
+                }
+            };
+            lineScanner.scanReverse(counting, new ChannelLineScanner.Observer() {
+                @Override
+                public boolean observeLine(CharSequence line, long position) {
+                    lines.add(line.toString());
+                    return lines.size() < 3;
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                    endOfFile[0] = true;
+                }
+            });
+        }
+
+        // lines 9999, 9998 and 9997 have 9999 % 37 = 9, 8 and 7 characters
+        assertEquals(Arrays.asList("abcdefghi", "abcdefgh", "abcdefg"), lines);
+        assertFalse(endOfFile[0]);
+        assertEquals(256, bytesRead[0]);
+    }
+
+    @Test
+    public void testScanRanges() throws Exception {
+        Path contentPath = createVariedLinesFile(300, "\r\n");
+        Files.write(contentPath, "tail".getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        lineScanner.setDelimiters("\r\n", "\n");
+        lineScanner.setBufferSize(16);
+
+        RecordingObserver expected = new RecordingObserver();
+        lineScanner.scanMapped(contentPath, expected);
+
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            final long size = fileChannel.size();
+            for (int splitSize : new int[]{1, 2, 7, 97, 1000, (int) size + 10}) {
+                RecordingObserver actual = new RecordingObserver();
+                long expectedRangeEnd = 0;
+                for (long start = 0; start < size; start += splitSize) {
+                    final int before = actual.lines.size();
+                    lineScanner.scan(fileChannel, start, start + splitSize, actual);
+                    if (actual.lines.size() > before) {
+                        // each range picks up exactly where the previous one said the next would start
+                        assertEquals(String.format("%010d", expectedRangeEnd),
+                                actual.lines.get(before).substring(0, 10));
+                    }
+                    expectedRangeEnd = actual.endOfFile;
+                }
+                assertEquals("splitSize=" + splitSize, expected.lines, actual.lines);
+                assertEquals(size, actual.endOfFile);
+            }
+        }
+    }
+
+    @Test
+    public void testScanRangeBoundaries() throws Exception {
+        // lines start at 0, 4, 9, 15
+        Path contentPath = loadResourcePath("ChannelLineScannerTest/test-with-eof-nl.txt");
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            RecordingObserver observer = new RecordingObserver();
+            // starts exactly on a line and ends exactly on the next
+            lineScanner.scan(fileChannel, 4, 9, observer);
+            assertEquals(Collections.singletonList("0000000004:BBBB"), observer.lines);
+            assertEquals(9, observer.endOfFile);
+
+            observer = new RecordingObserver();
+            // starts mid-line and the last line crosses the end
+            lineScanner.scan(fileChannel, 5, 10, observer);
+            assertEquals(Collections.singletonList("0000000009:CCCCC"), observer.lines);
+            assertEquals(15, observer.endOfFile);
+
+            observer = new RecordingObserver();
+            // no line starts within the range
+            lineScanner.scan(fileChannel, 10, 14, observer);
+            assertEquals(Collections.<String>emptyList(), observer.lines);
+            assertEquals(15, observer.endOfFile);
+        }
+    }
+
+    @Test
+    public void testLineFilter() throws Exception {
+        Path contentPath = createVariedLinesFile(1000, "\n");
+        Files.write(contentPath, "ends with hij".getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        lineScanner.setBufferSize(64);
+
+        RecordingObserver all = new RecordingObserver();
+        lineScanner.scanMapped(contentPath, all);
+        for (String[] patterns : new String[][]{{"hij"}, {"ghi", "cdefgx", "yz"}}) {
+            List<String> expected = new ArrayList<>();
+            for (String line : all.lines) {
+                for (String pattern : patterns) {
+                    if (line.substring(11).contains(pattern)) {
+                        expected.add(line);
+                        break;
+                    }
+                }
+            }
+
+            lineScanner.setLineFilter(patterns);
+            for (boolean lazy : new boolean[]{false, true}) {
+                lineScanner.setLazyDecoding(lazy);
+                try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                    RecordingObserver actual = new RecordingObserver();
+                    lineScanner.scan(fileChannel, actual);
+                    assertEquals(expected, actual.lines);
+                    assertEquals(all.endOfFile, actual.endOfFile);
+
+                    actual = new RecordingObserver();
+                    lineScanner.scanMapped(fileChannel, actual);
+                    assertEquals(expected, actual.lines);
+
+                    actual = new RecordingObserver();
+                    lineScanner.scanReverse(fileChannel, actual);
+                    List<String> reversed = new ArrayList<>(actual.lines);
+                    Collections.reverse(reversed);
+                    assertEquals(expected, reversed);
+                }
+            }
+
+            try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                RecordingBatchObserver batches = new RecordingBatchObserver(Integer.MAX_VALUE);
+                lineScanner.scanBatches(fileChannel, batches);
+                assertEquals(expected, batches.lines);
+            }
+        }
+
+        lineScanner.setLineFilter();
+        assertNull(lineScanner.getLineFilter());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLineFilterRequiresByteScannableCharset() throws Exception {
+        lineScanner.setCharset(StandardCharsets.UTF_16);
+        lineScanner.setLineFilter("ERROR");
+        try (FileChannel fileChannel = FileChannel.open(loadResourcePath("ChannelLineScannerTest/test-no-eof-nl.txt"),
+                StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, new RecordingObserver());
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        Path contentPath = createVariedLinesFile(1000, "\n");
+        // lines are up to 36 bytes, so some will be carried over in every mode
+        lineScanner.setBufferSize(16);
+        ScanMetricsCollector metrics = new ScanMetricsCollector();
+        lineScanner.setMetrics(metrics);
+
+        for (boolean lazy : new boolean[]{false, true}) {
+            lineScanner.setLazyDecoding(lazy);
+            metrics.reset();
+            try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+                lineScanner.scan(fileChannel, new RecordingObserver());
+                assertEquals(1, metrics.getScans());
+                assertEquals(fileChannel.size(), metrics.getBytesRead());
+            }
+            assertEquals(1000, metrics.getLinesObserved());
+            assertEquals(36, metrics.getLongestLine());
+            assertTrue(metrics.getCarriedOverBytes() > 0);
+            assertTrue(metrics.getBufferBorrows() >= 1);
+        }
+
+        metrics.reset();
+        lineScanner.setLineFilter("abcdefghijklmnopqrstuvwxyzabcdefghij");
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scanBatches(fileChannel, new RecordingBatchObserver(Integer.MAX_VALUE));
+        }
+        // only every 37th line is long enough to match
+        assertEquals(27, metrics.getLinesObserved());
+        assertEquals(36, metrics.getLongestLine());
+    }
+
+    @Test
+    public void testMetricsOfPooledBorrows() throws Exception {
+        Path contentPath = temp.newFile().toPath();
+        Files.write(contentPath, ("short\n" + repeat('x', 100) + "\nshort\n").getBytes(StandardCharsets.ISO_8859_1));
+        lineScanner.setBufferSize(16);
+        lineScanner.setLazyDecoding(true);
+        lineScanner.initDirectBufferPool();
+        ScanMetricsCollector metrics = new ScanMetricsCollector();
+        lineScanner.setMetrics(metrics);
+
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, new RecordingObserver());
+        }
+        // the buffers grown for the long line are borrowed from the pool too
+        final long borrows = metrics.getBufferBorrows();
+        assertTrue(borrows > 1);
+        assertTrue(metrics.getPoolExhaustions() > 0);
+
+        // and then all of them are idle in the pool
+        metrics.reset();
+        try (FileChannel fileChannel = FileChannel.open(contentPath, StandardOpenOption.READ)) {
+            lineScanner.scan(fileChannel, new RecordingObserver());
+        }
+        assertEquals(borrows, metrics.getBufferBorrows());
+        assertEquals(0, metrics.getPoolExhaustions());
+    }
+}
@@ -0,0 +1,128 @@
+package me.itzg.utils.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DirectBufferPoolTest {
+    @Test
+    public void testReuseAndCounters() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(100, 1);
+
+        ByteBufferInstance first = pool.borrowObject();
+        assertTrue(first.getBuffer().isDirect());
+        assertEquals(100, first.getBuffer().capacity());
+        first.getBuffer().put((byte) 1);
+        pool.returnObject(first);
+
+        ByteBufferInstance again = pool.borrowObject();
+        assertSame(first, again);
+        assertEquals(0, again.getBuffer().position());
+
+        ByteBufferInstance second = pool.borrowObject();
+        ByteBufferInstance third = pool.borrowObject();
+        assertEquals(3, pool.getNumActive());
+
+        // first goes to the thread cache, which is counted toward the max idle that the others exceed
+        pool.returnObject(again);
+        pool.returnObject(second);
+        pool.returnObject(third);
+
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(4, pool.getBorrowCount());
+        assertEquals(3, pool.getMissCount());
+        assertEquals(2, pool.getDiscardCount());
+    }
+
+    @Test
+    public void testSizeClasses() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(100);
+
+        assertEquals(100, pool.borrow(1).getBuffer().capacity());
+        assertEquals(100, pool.borrow(100).getBuffer().capacity());
+        assertEquals(200, pool.borrow(101).getBuffer().capacity());
+        assertEquals(800, pool.borrow(700).getBuffer().capacity());
+    }
+
+    @Test
+    public void testLargerClassesRetainFewer() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(100, 4);
+
+        // per class, up to 4, 2, 1 and then none are retained, including the one in the thread cache
+        for (int capacity : new int[]{100, 200, 400, 800}) {
+            List<ByteBufferInstance> borrowed = new ArrayList<>();
+            for (int i = 0; i < 6; ++i) {
+                borrowed.add(pool.borrow(capacity));
+            }
+            for (ByteBufferInstance instance : borrowed) {
+                pool.returnObject(instance);
+            }
+        }
+
+        assertEquals(0, pool.getNumActive());
+        assertEquals(4 + 2 + 1, pool.getNumIdle());
+        assertEquals(2 + 4 + 5 + 6, pool.getDiscardCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() throws Exception {
+        new DirectBufferPool(100).borrow(100 << DirectBufferPool.SIZE_CLASSES);
+    }
+
+    @Test
+    public void testConcurrentScans() throws Exception {
+        final DirectBufferPool pool = new DirectBufferPool(16);
+        final List<Callable<Integer>> scans = new ArrayList<>();
+        for (int i = 0; i < 32; ++i) {
+            scans.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    ChannelLineScanner scanner = new ChannelLineScanner();
+                    scanner.setDirectBufferPool(pool);
+                    final int[] count = new int[1];
+                    for (int j = 0; j < 50; ++j) {
+                        scanner.scan(Channels.newChannel(new ByteArrayInputStream(
+                                        "AAA\nBBBB\nCCCCC\n".getBytes(StandardCharsets.ISO_8859_1))),
+                                new ChannelLineScanner.Observer() {
+                                    @Override
+                                    public boolean observeLine(CharSequence line, long position) {
+                                        ++count[0];
+                                        return true;
+                                    }
+
+                                    @Override
+                                    public void observeEndOfFile(long position) {
+                                    }
+                                });
+                    }
+                    return count[0];
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<Integer> result : executor.invokeAll(scans)) {
+                assertEquals(150, result.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, pool.getNumActive());
+        assertEquals(32 * 50, pool.getBorrowCount());
+        assertTrue(pool.getMissCount() <= 32);
+    }
+}
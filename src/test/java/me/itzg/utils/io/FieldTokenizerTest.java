@@ -0,0 +1,188 @@
+package me.itzg.utils.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FieldTokenizerTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testUnquoted() throws Exception {
+        final FieldTokenizer tokenizer = FieldTokenizer.csv();
+        assertEquals(Arrays.asList("a", "bb", "", "ccc", ""), fields(tokenizer, "a,bb,,ccc,"));
+        assertEquals(Arrays.asList(""), fields(tokenizer, ""));
+
+        tokenizer.reset("x,yy");
+        assertTrue(tokenizer.next());
+        assertTrue(tokenizer.next());
+        assertEquals(1, tokenizer.getIndex());
+        assertEquals(2, tokenizer.getStart());
+        assertEquals(4, tokenizer.getEnd());
+        assertFalse(tokenizer.isEscaped());
+        assertTrue(tokenizer.contentEquals("yy"));
+        assertFalse(tokenizer.next());
+    }
+
+    @Test
+    public void testQuoted() throws Exception {
+        final FieldTokenizer tokenizer = FieldTokenizer.csv();
+        assertEquals(Arrays.asList("a,b", "say \"hi\"", "", "x", "open, to the end"),
+                fields(tokenizer, "\"a,b\",\"say \"\"hi\"\"\",\"\",\"x\",\"open, to the end"));
+
+        tokenizer.reset("1,\"a,b\"");
+        tokenizer.next();
+        tokenizer.next();
+        assertTrue(tokenizer.isQuoted());
+        assertFalse(tokenizer.isEscaped());
+        assertEquals(3, tokenizer.getStart());
+        assertEquals(6, tokenizer.getEnd());
+
+        // quotes within an unquoted field are literal and text after the closing quote is kept
+        assertEquals(Arrays.asList("5\" pipe", "ab\"c"), fields(tokenizer, "5\" pipe,\"ab\"\"\"c"));
+        assertEquals(Arrays.asList("abc"), fields(tokenizer, "\"ab\"c"));
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        final FieldTokenizer tokenizer = FieldTokenizer.tsv();
+        assertEquals(Arrays.asList("a\tb", "\"c\"", "d\\"), fields(tokenizer, "a\\\tb\t\"c\"\td\\\\"));
+
+        final FieldTokenizer csv = FieldTokenizer.csv();
+        csv.setEscape('\\');
+        assertEquals(Arrays.asList("a,b", "q\"q", "trailing\\"), fields(csv, "a\\,b,\"q\\\"q\",trailing\\"));
+
+        try {
+            csv.setEscape('"');
+            fail("expected the escape to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseFields() throws Exception {
+        final FieldTokenizer tokenizer = FieldTokenizer.csv();
+        tokenizer.reset("42,\"-7\",\"1\"\"\",3.25");
+        tokenizer.next();
+        assertEquals(42, tokenizer.parseLong());
+        tokenizer.next();
+        assertEquals(-7, tokenizer.parseLong());
+        tokenizer.next();
+        try {
+            tokenizer.parseLong();
+            fail("expected 1\" to be rejected");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+        tokenizer.next();
+        assertEquals(3.25, tokenizer.parseDouble(), 0);
+    }
+
+    @Test
+    public void testParseLong() throws Exception {
+        for (String value : new String[]{"0", "-0", "+12", "9223372036854775807", "-9223372036854775808", "007"}) {
+            assertEquals(value, Long.parseLong(value), FieldTokenizer.parseLong("[" + value + "]", 1, value.length() + 1));
+        }
+        for (String value : new String[]{"", "-", "+", "1a", "9223372036854775808", "-9223372036854775809", " 1",
+                "99999999999999999999"}) {
+            try {
+                FieldTokenizer.parseLong(value, 0, value.length());
+                fail("expected " + value + " to be rejected");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testParseDouble() throws Exception {
+        for (String value : new String[]{"0", "-0", "-0.0", "1.5", ".5", "5.", "+3.14159", "1e10", "1E-5", "-2.5e+3",
+                "123456789012345", "1234567890123456789", "0.1", "0.000001234", "1e22", "1e23", "4.9e-324",
+                "1.7976931348623157e308", "NaN", "-Infinity", "0x1p3", " 7 ", "2d", "00000000000000000001.5"}) {
+            assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+                    Double.doubleToLongBits(FieldTokenizer.parseDouble(value, 0, value.length())));
+        }
+
+        final Random random = new Random(23);
+        for (int i = 0; i < 10000; ++i) {
+            final String value = String.format("%." + random.nextInt(8) + "f", (random.nextDouble() - 0.5) * 1e6);
+            assertEquals(value, Double.parseDouble(value), FieldTokenizer.parseDouble(value, 0, value.length()), 0);
+        }
+
+        for (String value : new String[]{"", ".", "-", "1e", "1.2.3", "abc"}) {
+            try {
+                FieldTokenizer.parseDouble(value, 0, value.length());
+                fail("expected " + value + " to be rejected");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRecordObserver() throws Exception {
+        Path path = temp.newFile().toPath();
+        Files.write(path, "host\tcount\tload\nalpha\t3\t0.5\nbeta\t4\t1.25\n".getBytes(StandardCharsets.UTF_8));
+
+        ChannelLineScanner scanner = new ChannelLineScanner();
+        scanner.setLazyDecoding(true);
+        final List<String> hosts = new ArrayList<>();
+        final long[] totalCount = new long[1];
+        final double[] totalLoad = new double[1];
+        final long[] endOfFile = {-1};
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            scanner.scan(channel, FieldTokenizer.tsv().asLineObserver(new FieldTokenizer.RecordObserver() {
+                @Override
+                public boolean observeRecord(FieldTokenizer fields, long position) {
+                    if (position == 0) {
+                        return true;
+                    }
+                    fields.next();
+                    hosts.add(fields.toString() + "@" + position);
+                    fields.next();
+                    totalCount[0] += fields.parseLong();
+                    fields.next();
+                    totalLoad[0] += fields.parseDouble();
+                    return true;
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                    endOfFile[0] = position;
+                }
+            }));
+        }
+
+        assertEquals(Arrays.asList("alpha@16", "beta@28"), hosts);
+        assertEquals(7, totalCount[0]);
+        assertEquals(1.75, totalLoad[0], 0);
+        assertEquals(40, endOfFile[0]);
+    }
+
+    private static List<String> fields(FieldTokenizer tokenizer, String line) {
+        final List<String> fields = new ArrayList<>();
+        tokenizer.reset(line);
+        while (tokenizer.next()) {
+            fields.add(tokenizer.appendTo(new StringBuilder()).toString());
+            assertEquals(fields.get(fields.size() - 1), tokenizer.toString());
+        }
+        return fields;
+    }
+}
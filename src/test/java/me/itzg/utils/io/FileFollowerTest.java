@@ -0,0 +1,135 @@
+package me.itzg.utils.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileFollowerTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path file;
+    private FileFollower follower;
+    private List<String> lines = new ArrayList<>();
+    private ChannelLineScanner.Observer observer = new ChannelLineScanner.Observer() {
+        @Override
+        public boolean observeLine(CharSequence line, long position) {
+            lines.add(position + ":" + line);
+            return !line.toString().equals("stop");
+        }
+
+        @Override
+        public void observeEndOfFile(long position) {
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        file = temp.newFile().toPath();
+        follower = new FileFollower(file, new ChannelLineScanner());
+    }
+
+    @Test
+    public void testAppendsAndPartialLines() throws Exception {
+        append("AAA\nBB");
+        assertTrue(follower.poll(observer));
+        assertEquals(Collections.singletonList("0:AAA"), lines);
+        assertEquals(4, follower.getCheckpoint().getPosition());
+
+        // nothing new
+        assertTrue(follower.poll(observer));
+        assertEquals(1, lines.size());
+
+        append("B\nCCC\n");
+        assertTrue(follower.poll(observer));
+        assertEquals(Arrays.asList("0:AAA", "4:BBB", "8:CCC"), lines);
+        assertEquals(12, follower.getCheckpoint().getPosition());
+    }
+
+    @Test
+    public void testEndOfFileOnlyWithNewContent() throws Exception {
+        final List<Long> endsOfFile = new ArrayList<>();
+        ChannelLineScanner.Observer recording = new ChannelLineScanner.Observer() {
+            @Override
+            public boolean observeLine(CharSequence line, long position) {
+                lines.add(position + ":" + line);
+                return true;
+            }
+
+            @Override
+            public void observeEndOfFile(long position) {
+                endsOfFile.add(position);
+            }
+        };
+
+        append("AAA\nBB");
+        assertTrue(follower.poll(recording));
+        assertEquals(new FollowCheckpoint(4, follower.getCheckpoint().getFileKey(), 6), follower.getCheckpoint());
+
+        // the partial line is not read again until something is appended to it
+        assertTrue(follower.poll(recording));
+        assertTrue(follower.poll(recording));
+        assertEquals(Collections.singletonList(6L), endsOfFile);
+
+        append("B\n");
+        assertTrue(follower.poll(recording));
+        assertEquals(Arrays.asList("0:AAA", "4:BBB"), lines);
+        assertEquals(Arrays.asList(6L, 8L), endsOfFile);
+        assertEquals(8, follower.getCheckpoint().getReadPosition());
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        append("AAA\nBBB\n");
+        assertTrue(follower.poll(observer));
+
+        append("CCC\n");
+        FileFollower resumed = new FileFollower(file, new ChannelLineScanner(), follower.getCheckpoint());
+        assertTrue(resumed.poll(observer));
+        assertEquals(Arrays.asList("0:AAA", "4:BBB", "8:CCC"), lines);
+    }
+
+    @Test
+    public void testTruncationAndRotation() throws Exception {
+        append("AAA\nBBB\n");
+        assertTrue(follower.poll(observer));
+
+        Files.write(file, "X\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(follower.poll(observer));
+        assertEquals(Arrays.asList("0:AAA", "4:BBB", "0:X"), lines);
+
+        // rotate to a new file that happens to be longer than the old position
+        Files.move(file, temp.getRoot().toPath().resolve("rotated"));
+        Files.write(file, "YYYY\nZZ\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(follower.poll(observer));
+        assertEquals(Arrays.asList("0:AAA", "4:BBB", "0:X", "0:YYYY", "5:ZZ"), lines);
+    }
+
+    @Test
+    public void testObserverStops() throws Exception {
+        append("AAA\nstop\nCCC\n");
+        assertFalse(follower.poll(observer));
+        assertEquals(9, follower.getCheckpoint().getPosition());
+
+        assertTrue(follower.poll(observer));
+        assertEquals(Arrays.asList("0:AAA", "4:stop", "9:CCC"), lines);
+    }
+
+    private void append(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,286 @@
+package me.itzg.utils.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+public class GzipScanTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ChannelLineScanner lineScanner;
+    private String content;
+
+    @Before
+    public void setUp() throws Exception {
+        lineScanner = new ChannelLineScanner();
+        lineScanner.setBufferSize(64);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; ++i) {
+            sb.append("line ").append(i).append(' ');
+            for (int j = 0; j < i % 29; ++j) {
+                sb.append((char) ('a' + j));
+            }
+            sb.append('\n');
+        }
+        content = sb.toString();
+    }
+
+    @Test
+    public void testScanAndResumeFromCheckpoints() throws Exception {
+        // members of 1000 bytes, so most member boundaries fall mid-line
+        Path gz = writeGzipMembers(1000);
+        lineScanner.setGzipCheckpointInterval(5000);
+
+        List<String> expected = expectedLines(0);
+        Recorder all = new Recorder();
+        GzipIndex index;
+        try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+            index = lineScanner.scanGzip(channel, all);
+        }
+        assertEquals(expected, all.lines);
+        assertEquals(content.length(), all.endOfFile);
+
+        List<GzipIndex.Checkpoint> checkpoints = index.getCheckpoints();
+        assertTrue(checkpoints.size() > 5);
+        assertEquals(new GzipIndex.Checkpoint(0, 0, 0), checkpoints.get(0));
+        for (int i = 1; i < checkpoints.size(); ++i) {
+            long uncompressed = checkpoints.get(i).getUncompressedOffset();
+            assertTrue(uncompressed - checkpoints.get(i - 1).getUncompressedOffset() >= 5000);
+            assertEquals(content.charAt((int) uncompressed - 1) == '\n' ? uncompressed
+                            : content.indexOf('\n', (int) uncompressed) + 1,
+                    checkpoints.get(i).getFirstLineStart());
+        }
+
+        for (GzipIndex.Checkpoint checkpoint : checkpoints) {
+            Recorder resumed = new Recorder();
+            try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+                lineScanner.scanGzip(channel, checkpoint, resumed);
+            }
+            assertEquals(checkpoint.toString(),
+                    expectedLines(checkpoint.getFirstLineStart()), resumed.lines);
+            assertEquals(content.length(), resumed.endOfFile);
+        }
+
+        GzipIndex.Checkpoint floor = index.floor(content.length() / 2);
+        assertTrue(floor.getUncompressedOffset() <= content.length() / 2);
+    }
+
+    @Test
+    public void testResumeFromCheckpointsWithLineFilter() throws Exception {
+        Path gz = writeGzipMembers(1000);
+        lineScanner.setGzipCheckpointInterval(5000);
+        GzipIndex index;
+        try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+            index = lineScanner.scanGzip(channel, new Recorder());
+        }
+
+        // so the partial line at a checkpoint is usually discarded by the filter rather than the skip
+        lineScanner.setLineFilter("7 ");
+        for (GzipIndex.Checkpoint checkpoint : index.getCheckpoints()) {
+            List<String> expected = new ArrayList<>();
+            for (String line : expectedLines(checkpoint.getFirstLineStart())) {
+                if (line.contains("7 ")) {
+                    expected.add(line);
+                }
+            }
+
+            Recorder resumed = new Recorder();
+            try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+                lineScanner.scanGzip(channel, checkpoint, resumed);
+            }
+            assertEquals(checkpoint.toString(), expected, resumed.lines);
+            assertEquals(content.length(), resumed.endOfFile);
+        }
+
+        try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+            lineScanner.scanGzip(channel, new Recorder());
+            fail("expected building an index with a filter to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDelimiterSplitAcrossMembers() throws Exception {
+        lineScanner.setDelimiters("\r\n");
+        lineScanner.setGzipCheckpointInterval(1);
+        // each member ends between the two bytes of a delimiter, as fixed-size blocks often do
+        String[] members = {"one\r", "\ntwo\r", "\nthree\r\nfour\r", "\nfive"};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (String member : members) {
+            try (OutputStream out = new GZIPOutputStream(new NonClosing(bytes))) {
+                out.write(member.getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+        Path gz = temp.newFile().toPath();
+        Files.write(gz, bytes.toByteArray());
+
+        Recorder all = new Recorder();
+        GzipIndex index;
+        try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+            index = lineScanner.scanGzip(channel, all);
+        }
+        assertEquals(Arrays.asList("0:one", "5:two", "10:three", "17:four", "23:five"), all.lines);
+
+        List<GzipIndex.Checkpoint> checkpoints = index.getCheckpoints();
+        assertEquals(4, checkpoints.size());
+        assertEquals(4, checkpoints.get(1).getUncompressedOffset());
+        assertEquals(5, checkpoints.get(1).getFirstLineStart());
+        assertEquals(22, checkpoints.get(3).getUncompressedOffset());
+        assertEquals(23, checkpoints.get(3).getFirstLineStart());
+
+        Recorder resumed = new Recorder();
+        try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+            lineScanner.scanGzip(channel, checkpoints.get(1), resumed);
+        }
+        assertEquals(all.lines.subList(1, 5), resumed.lines);
+        assertEquals(27, resumed.endOfFile);
+
+        resumed = new Recorder();
+        try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+            lineScanner.scanGzip(channel, checkpoints.get(3), resumed);
+        }
+        assertEquals(Arrays.asList("23:five"), resumed.lines);
+    }
+
+    @Test
+    public void testSingleMemberWithReadAheadAndLazyDecoding() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        Path gz = temp.newFile().toPath();
+        Files.write(gz, bytes.toByteArray());
+
+        lineScanner.setReadAheadDepth(2);
+        lineScanner.setLazyDecoding(true);
+        lineScanner.initDirectBufferPool();
+        Recorder all = new Recorder();
+        GzipIndex index;
+        try (FileChannel channel = FileChannel.open(gz, StandardOpenOption.READ)) {
+            index = lineScanner.scanGzip(channel, all);
+        }
+
+        assertEquals(expectedLines(0), all.lines);
+        assertEquals(1, index.getCheckpoints().size());
+    }
+
+    @Test
+    public void testCorruptTrailer() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        byte[] corrupt = bytes.toByteArray();
+        corrupt[corrupt.length - 5] ^= 1;
+
+        try (InflatingChannel channel = InflatingChannel.gzip(Channels.newChannel(new ByteArrayInputStream(corrupt)))) {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            while (channel.read(buffer) != -1) {
+                buffer.clear();
+            }
+            fail();
+        } catch (ZipException e) {
+            assertEquals("Corrupt GZIP trailer", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testZlib() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        Recorder all = new Recorder();
+        try (InflatingChannel channel = InflatingChannel.zlib(
+                Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))) {
+            // into direct buffers, so also through the inflater's own output array
+            lineScanner.initDirectBufferPool();
+            lineScanner.scan(channel, all);
+            assertEquals(content.length(), channel.getUncompressedPosition());
+            assertEquals(bytes.size(), channel.getCompressedPosition());
+        }
+        assertEquals(expectedLines(0), all.lines);
+    }
+
+    private Path writeGzipMembers(int memberSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] raw = content.getBytes(StandardCharsets.ISO_8859_1);
+        for (int offset = 0; offset < raw.length; offset += memberSize) {
+            try (OutputStream out = new GZIPOutputStream(new NonClosing(bytes))) {
+                out.write(raw, offset, Math.min(memberSize, raw.length - offset));
+            }
+        }
+        Path gz = temp.newFile().toPath();
+        Files.write(gz, bytes.toByteArray());
+        return gz;
+    }
+
+    /**
+     * @return the lines, as recorded, starting at or after the given offset
+     */
+    private List<String> expectedLines(long from) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = content.indexOf('\n', start)) != -1) {
+            if (start >= from) {
+                lines.add(start + ":" + content.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    private static class Recorder implements ChannelLineScanner.Observer {
+        final List<String> lines = new ArrayList<>();
+        long endOfFile = -1;
+
+        @Override
+        public boolean observeLine(CharSequence line, long position) {
+            lines.add(position + ":" + line);
+            return true;
+        }
+
+        @Override
+        public void observeEndOfFile(long position) {
+            endOfFile = position;
+        }
+    }
+
+    private static class NonClosing extends FilterOutputStream {
+        NonClosing(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package me.itzg.utils.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IndexedLineReaderTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ChannelLineScanner lineScanner;
+
+    @Before
+    public void setUp() throws Exception {
+        lineScanner = new ChannelLineScanner();
+        lineScanner.setLazyDecoding(true);
+        lineScanner.setDelimiters("\n", "\r\n");
+    }
+
+    @Test
+    public void testRandomAccess() throws Exception {
+        Path file = temp.newFile().toPath();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) {
+            content.append("line ").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        content.append("last");
+        Files.write(file, content.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        Path indexFile = temp.newFile().toPath();
+        assertEquals(5001, LineOffsetIndex.build(file, indexFile, lineScanner));
+
+        try (IndexedLineReader reader = new IndexedLineReader(file, indexFile, lineScanner)) {
+            assertEquals(5001, reader.getLineCount());
+            assertEquals("line 0", reader.readLine(0));
+            assertEquals("line 1234", reader.readLine(1234));
+            assertEquals("line 4999", reader.readLine(4999));
+            assertEquals("last", reader.readLine(5000));
+            assertEquals(content.indexOf("line 10\n"), reader.getLinePosition(10));
+
+            final List<String> lines = new ArrayList<>();
+            final long[] endOfFile = new long[1];
+            reader.readLines(4998, 5001, new ChannelLineScanner.Observer() {
+                @Override
+                public boolean observeLine(CharSequence line, long position) {
+                    lines.add(position + ":" + line);
+                    return true;
+                }
+
+                @Override
+                public void observeEndOfFile(long position) {
+                    endOfFile[0] = position;
+                }
+            });
+            assertEquals(Arrays.asList(content.indexOf("line 4998\n") + ":line 4998",
+                    content.indexOf("line 4999\r\n") + ":line 4999",
+                    content.indexOf("last") + ":last"), lines);
+            assertEquals(content.length(), endOfFile[0]);
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        Path file = temp.newFile().toPath();
+        Path indexFile = temp.newFile().toPath();
+
+        assertEquals(0, LineOffsetIndex.build(file, indexFile, lineScanner));
+        try (IndexedLineReader reader = new IndexedLineReader(file, indexFile, lineScanner)) {
+            assertEquals(0, reader.getLineCount());
+        }
+    }
+
+    @Test
+    public void testFilteredScannerIsRejected() throws Exception {
+        Path file = temp.newFile().toPath();
+        Files.write(file, "a\nERROR b\nc\n".getBytes(StandardCharsets.ISO_8859_1));
+        Path indexFile = temp.newFile().toPath();
+
+        lineScanner.setLineFilter("ERROR");
+        try {
+            LineOffsetIndex.build(file, indexFile, lineScanner);
+            fail("expected the filtered scanner to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCharsetThatIsNotByteScannableIsRejected() throws Exception {
+        Path file = temp.newFile().toPath();
+        Files.write(file, "a\nb\n".getBytes(StandardCharsets.UTF_16));
+        Path indexFile = temp.newFile().toPath();
+
+        lineScanner.setCharset(StandardCharsets.UTF_16);
+        LineOffsetIndex.build(file, indexFile, lineScanner);
+        try {
+            new IndexedLineReader(file, indexFile, lineScanner).close();
+            fail("expected the UTF-16 scanner to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
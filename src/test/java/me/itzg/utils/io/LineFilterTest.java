@@ -0,0 +1,73 @@
+package me.itzg.utils.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineFilterTest {
+    @Test
+    public void testSinglePattern() throws Exception {
+        LineFilter filter = LineFilter.encode(new String[]{"ERROR"}, StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.wrap("INFO ok|ERRO|x ERROR y|ERROR".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertFalse(filter.matches(buffer, 0, 7));
+        assertFalse(filter.matches(buffer, 8, 12));
+        assertTrue(filter.matches(buffer, 13, 22));
+        // must occur entirely within the line
+        assertFalse(filter.matches(buffer, 13, 19));
+        assertTrue(filter.matches(buffer, 23, 28));
+    }
+
+    @Test
+    public void testOverlappingPatterns() throws Exception {
+        LineFilter filter = LineFilter.encode(new String[]{"he", "she", "his", "hers"}, StandardCharsets.ISO_8859_1);
+
+        for (String line : new String[]{"ushers", "this", "sh e", "h", "", "ahishe", "hi s"}) {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.ISO_8859_1));
+            assertEquals(line, bruteForce(line, "he", "she", "his", "hers"), filter.matches(buffer, 0, buffer.limit()));
+        }
+    }
+
+    @Test
+    public void testRandomAgainstBruteForce() throws Exception {
+        final Random random = new Random(7);
+        for (int round = 0; round < 200; ++round) {
+            final String[] patterns = new String[1 + random.nextInt(6)];
+            for (int i = 0; i < patterns.length; ++i) {
+                patterns[i] = randomString(random, 1 + random.nextInt(4));
+            }
+            final LineFilter filter = LineFilter.encode(patterns, StandardCharsets.ISO_8859_1);
+
+            for (int i = 0; i < 50; ++i) {
+                final String line = randomString(random, random.nextInt(30));
+                // offset within the buffer to check the bounds are respected
+                ByteBuffer buffer = ByteBuffer.wrap(("abc" + line + "abc").getBytes(StandardCharsets.ISO_8859_1));
+                assertEquals(line, bruteForce(line, patterns), filter.matches(buffer, 3, 3 + line.length()));
+            }
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            // a small alphabet, with a high byte, so that partial matches are common
+            sb.append("abc\u00e9".charAt(random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    private static boolean bruteForce(String line, String... patterns) {
+        for (String pattern : patterns) {
+            if (line.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
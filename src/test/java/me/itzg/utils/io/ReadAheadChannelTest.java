@@ -0,0 +1,137 @@
+package me.itzg.utils.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ReadAheadChannelTest {
+    @Test
+    public void testReadsAllInOrder() throws Exception {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) (i * 31);
+        }
+
+        DirectBufferPool pool = new DirectBufferPool(100);
+        ByteBuffer dst = ByteBuffer.allocate(content.length);
+        try (ReadAheadChannel channel = ReadAheadChannel.start(
+                Channels.newChannel(new ByteArrayInputStream(content)), 3, 100, pool, null)) {
+            ByteBuffer chunk = ByteBuffer.allocate(77);
+            int amountRead;
+            while ((amountRead = channel.read(chunk)) != -1) {
+                assertTrue(amountRead > 0);
+                chunk.flip();
+                dst.put(chunk);
+                chunk.clear();
+            }
+            assertEquals(-1, channel.read(chunk));
+        }
+
+        assertArrayEquals(content, dst.array());
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    public void testFailurePropagates() throws Exception {
+        ReadableByteChannel failing = Channels.newChannel(new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (++count > 10) {
+                    throw new IOException("boom");
+                }
+                return 'x';
+            }
+        });
+
+        DirectBufferPool pool = new DirectBufferPool(4);
+        try (ReadAheadChannel channel = ReadAheadChannel.start(failing, 2, 4, pool, null)) {
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            try {
+                while (channel.read(dst) != -1) {
+                    dst.clear();
+                }
+                fail();
+            } catch (IOException e) {
+                assertEquals("boom", e.getMessage());
+            }
+        }
+        // including the buffer that was being filled when the read failed
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    public void testInterruptedWhileWaiting() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        ReadableByteChannel stalled = Channels.newChannel(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        });
+
+        ReadAheadChannel channel = ReadAheadChannel.start(stalled, 2, 4, null, null);
+        Thread.currentThread().interrupt();
+        try {
+            channel.read(ByteBuffer.allocate(4));
+            fail();
+        } catch (InterruptedIOException e) {
+            // the interrupt remains visible to the caller
+            assertTrue(Thread.interrupted());
+        } finally {
+            release.countDown();
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testCloseBeforeConsuming() throws Exception {
+        byte[] content = new byte[10000];
+        Arrays.fill(content, (byte) 'x');
+        DirectBufferPool pool = new DirectBufferPool(16);
+
+        ReadAheadChannel channel = ReadAheadChannel.start(
+                Channels.newChannel(new ByteArrayInputStream(content)), 4, 16, pool, null);
+        channel.read(ByteBuffer.allocate(5));
+        channel.close();
+
+        assertFalse(channel.isOpen());
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    public void testRejectedReaderReturnsBuffers() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(16);
+        try {
+            ReadAheadChannel.start(Channels.newChannel(new ByteArrayInputStream(new byte[100])), 3, 16, pool,
+                    new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            throw new RejectedExecutionException("full");
+                        }
+                    });
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertEquals("full", e.getMessage());
+        }
+        assertEquals(0, pool.getNumActive());
+    }
+}
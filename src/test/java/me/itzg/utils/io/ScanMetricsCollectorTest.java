@@ -0,0 +1,76 @@
+package me.itzg.utils.io;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScanMetricsCollectorTest {
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final ScanMetricsCollector metrics = new ScanMetricsCollector();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            final int longest = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 10000; ++i) {
+                        metrics.scanEnded(10, 2, 3, 4, 5, longest);
+                        metrics.bufferBorrowed(7, i % 2 == 0);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80000, metrics.getScans());
+        assertEquals(800000, metrics.getBytesRead());
+        assertEquals(160000, metrics.getLinesObserved());
+        assertEquals(240000, metrics.getReadNanos());
+        assertEquals(320000, metrics.getScanNanos());
+        assertEquals(400000, metrics.getCarriedOverBytes());
+        assertEquals(7, metrics.getLongestLine());
+        assertEquals(80000, metrics.getBufferBorrows());
+        assertEquals(560000, metrics.getBorrowWaitNanos());
+        assertEquals(40000, metrics.getPoolExhaustions());
+
+        metrics.reset();
+        assertEquals(0, metrics.getBytesRead());
+        assertEquals(0, metrics.getLongestLine());
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        ScanMetricsCollector metrics = new ScanMetricsCollector();
+        metrics.scanEnded(100, 4, 1, 2, 0, 30);
+
+        ObjectName name = metrics.register("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(100L, server.getAttribute(name, "BytesRead"));
+            assertEquals(30L, server.getAttribute(name, "LongestLine"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "LinesObserved"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}